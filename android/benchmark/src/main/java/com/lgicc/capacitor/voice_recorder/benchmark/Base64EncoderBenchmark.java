@@ -0,0 +1,53 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import com.lgicc.capacitor.voice_recorder.Base64Encoder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64EncoderBenchmark {
+
+    // A single spectrum, a batch of a few small frames and a large batch of full spectra
+    @Param({ "64", "2048", "16384" })
+    public int length;
+
+    private int[] magnitudes;
+    private byte[] batch;
+
+    @Setup
+    public void setUp() {
+        magnitudes = new int[length];
+        batch = new byte[length];
+        for (int i = 0; i < length; i++) {
+            magnitudes[i] = (i * 31) & 0xFF;
+            batch[i] = (byte) magnitudes[i];
+        }
+    }
+
+    @Benchmark
+    public String encodeMagnitudes() {
+        return Base64Encoder.encodeToBase64(magnitudes);
+    }
+
+    @Benchmark
+    public String encodeBatch() {
+        return Base64Encoder.encodeToBase64(batch, batch.length);
+    }
+}
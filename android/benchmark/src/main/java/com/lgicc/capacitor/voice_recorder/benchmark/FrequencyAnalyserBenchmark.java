@@ -0,0 +1,57 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import com.lgicc.capacitor.voice_recorder.recording.FrequencyAnalyser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrequencyAnalyserBenchmark {
+
+    @Param({ "1024", "4096" })
+    public int frameSize;
+
+    private short[] buffer;
+    private LegacyFrequencyAnalyser legacy;
+    private FrequencyAnalyser realDouble;
+    private FrequencyAnalyser realFloat;
+
+    @Setup
+    public void setUp() {
+        buffer = Signals.speechLike(frameSize, 44100);
+        legacy = new LegacyFrequencyAnalyser();
+        realDouble = new FrequencyAnalyser(frameSize, frameSize, false);
+        realFloat = new FrequencyAnalyser(frameSize, frameSize, true);
+    }
+
+    @Benchmark
+    public int[] legacyComplexFft() {
+        return legacy.toFrequencies(buffer);
+    }
+
+    @Benchmark
+    public int[] realFftDouble() {
+        return realDouble.toFrequencies(buffer, buffer.length);
+    }
+
+    @Benchmark
+    public int[] realFftFloat() {
+        return realFloat.toFrequencies(buffer, buffer.length);
+    }
+}
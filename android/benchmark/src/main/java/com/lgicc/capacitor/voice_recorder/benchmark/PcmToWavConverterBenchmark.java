@@ -0,0 +1,45 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import com.lgicc.capacitor.voice_recorder.PcmToWavConverter;
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmToWavConverterBenchmark {
+
+    // 0 is the header-only call WavFileWriter makes, the others are 1 s and 10 s of 44.1 kHz mono 16-bit PCM
+    @Param({ "0", "1", "10" })
+    public int seconds;
+
+    private byte[] pcm;
+
+    @Setup
+    public void setUp() {
+        short[] samples = Signals.speechLike(44100 * seconds, 44100);
+        pcm = Signals.toLittleEndianBytes(samples);
+    }
+
+    @Benchmark
+    public byte[] convertPcmToWav() throws IOException {
+        return PcmToWavConverter.convertPCMToWAV(pcm, 44100, 1);
+    }
+}
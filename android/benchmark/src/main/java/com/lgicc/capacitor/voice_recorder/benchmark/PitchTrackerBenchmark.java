@@ -0,0 +1,58 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import com.lgicc.capacitor.voice_recorder.recording.PitchTracker;
+import com.lgicc.capacitor.voice_recorder.recording.RecordingConfig;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One operation is a read of 4096 frames, 85 ms of audio at 48 kHz, with the default settings
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchTrackerBenchmark {
+
+    private static final int FRAMES_PER_READ = 4096;
+
+    @Param({ "16000", "48000" })
+    public int sampleRate;
+
+    @Param({ "1", "2" })
+    public int channels;
+
+    private short[] buffer;
+    private PitchTracker tracker;
+
+    @Setup
+    public void setUp() {
+        RecordingConfig config = RecordingConfig.of(sampleRate, channels, RecordingConfig.ENCODING_PCM_16BIT);
+        short[] mono = Signals.speechLike(FRAMES_PER_READ, sampleRate);
+        buffer = new short[FRAMES_PER_READ * channels];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = mono[i / channels];
+        }
+
+        tracker = new PitchTracker(config, new PitchTracker.Settings(PitchTracker.DEFAULT_MIN_HZ, PitchTracker.DEFAULT_MAX_HZ,
+                PitchTracker.DEFAULT_THRESHOLD, PitchTracker.DEFAULT_HOP_MS, PitchTracker.DEFAULT_FRAMES_PER_EVENT),
+                (frequencies, confidences, frames, startMs) -> { });
+    }
+
+    @Benchmark
+    public void trackRead() {
+        tracker.onAudioBuffer(buffer, buffer.length);
+    }
+}
@@ -0,0 +1,61 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import com.lgicc.capacitor.voice_recorder.recording.SampleConverter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleDecodeBenchmark {
+
+    // One capture read, mono and stereo
+    @Param({ "4096", "8192" })
+    public int samplesPerRead;
+
+    private byte[] pcmBytes;
+    private float[] floatSamples;
+    private short[] target;
+
+    @Setup
+    public void setUp() {
+        short[] samples = Signals.speechLike(samplesPerRead, 44100);
+        pcmBytes = Signals.toLittleEndianBytes(samples);
+        floatSamples = new float[samplesPerRead];
+        for (int i = 0; i < samplesPerRead; i++) {
+            floatSamples[i] = samples[i] / 32768f;
+        }
+        target = new short[samplesPerRead];
+    }
+
+    // The byte[] read and decode the capture loop used before it read short[] directly, allocating per read
+    @Benchmark
+    public short[] legacyByteDecode() {
+        short[] shortBuffer = new short[pcmBytes.length / 2];
+        for (int i = 0; i < shortBuffer.length; i++) {
+            shortBuffer[i] = (short) ((pcmBytes[2 * i] & 0xFF) | (pcmBytes[2 * i + 1] << 8));
+        }
+        return shortBuffer;
+    }
+
+    @Benchmark
+    public short[] floatToPcm16() {
+        SampleConverter.toPcm16(floatSamples, target, floatSamples.length);
+        return target;
+    }
+}
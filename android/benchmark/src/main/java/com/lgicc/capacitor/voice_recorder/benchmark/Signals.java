@@ -0,0 +1,31 @@
+package com.lgicc.capacitor.voice_recorder.benchmark;
+
+import java.util.Random;
+
+final class Signals {
+
+    private Signals() {
+    }
+
+    // Two voiced harmonics plus noise, deterministic so runs are comparable
+    static short[] speechLike(int length, int sampleRate) {
+        Random random = new Random(42);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            double value = Math.sin(2 * Math.PI * 180 * i / sampleRate) * 6000
+                    + Math.sin(2 * Math.PI * 1250 * i / sampleRate) * 2000
+                    + random.nextGaussian() * 400;
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        return samples;
+    }
+
+    static byte[] toLittleEndianBytes(short[] samples) {
+        byte[] bytes = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return bytes;
+    }
+}
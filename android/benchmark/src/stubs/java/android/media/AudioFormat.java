@@ -0,0 +1,10 @@
+package android.media;
+
+// Just enough of the Android class for RecordingConfig, with the values of the platform
+public class AudioFormat {
+
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_FLOAT = 4;
+    public static final int CHANNEL_IN_MONO = 16;
+    public static final int CHANNEL_IN_STEREO = 12;
+}
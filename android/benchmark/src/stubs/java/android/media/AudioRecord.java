@@ -0,0 +1,11 @@
+package android.media;
+
+// Just enough of the Android class for RecordingConfig, every configuration counts as supported
+public class AudioRecord {
+
+    public static final int ERROR_BAD_VALUE = -2;
+
+    public static int getMinBufferSize(int sampleRateInHz, int channelConfig, int audioFormat) {
+        return 4096;
+    }
+}
@@ -0,0 +1,18 @@
+package android.util;
+
+// Just enough of the Android class for Base64Encoder, backed by java.util.Base64
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_WRAP = 2;
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encodeToString(input, 0, input.length, flags);
+    }
+
+    public static String encodeToString(byte[] input, int offset, int len, int flags) {
+        byte[] slice = offset == 0 && len == input.length ? input : java.util.Arrays.copyOfRange(input, offset, offset + len);
+        java.util.Base64.Encoder encoder = (flags & NO_WRAP) != 0 ? java.util.Base64.getEncoder() : java.util.Base64.getMimeEncoder();
+        return encoder.encodeToString(slice);
+    }
+}
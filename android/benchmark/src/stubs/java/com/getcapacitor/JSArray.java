@@ -0,0 +1,15 @@
+package com.getcapacitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Just enough of the Capacitor class for RecordingConfig
+public class JSArray {
+
+    private final List<Object> values = new ArrayList<>();
+
+    public JSArray put(Object value) {
+        values.add(value);
+        return this;
+    }
+}
@@ -0,0 +1,15 @@
+package com.getcapacitor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Just enough of the Capacitor class for RecordingConfig
+public class JSObject {
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    public JSObject put(String key, Object value) {
+        values.put(key, value);
+        return this;
+    }
+}
@@ -13,4 +13,8 @@ public class Base64Encoder {
         // Encode byte[] to Base64
         return Base64.encodeToString(byteArray, Base64.NO_WRAP);
     }
+
+    public static String encodeToBase64(byte[] data, int length) {
+        return Base64.encodeToString(data, 0, length, Base64.NO_WRAP);
+    }
 }
@@ -4,7 +4,6 @@ import android.Manifest;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.media.AudioManager;
 import android.media.AudioRecord;
 import android.net.Uri;
@@ -14,8 +13,9 @@ import android.provider.Settings;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
 
+import com.getcapacitor.FileUtils;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PermissionState;
 import com.getcapacitor.Plugin;
@@ -24,13 +24,33 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
 import com.lgicc.capacitor.voice_recorder.error_messages.ErrorMessage;
+import com.lgicc.capacitor.voice_recorder.recording.AudioBufferListener;
+import com.lgicc.capacitor.voice_recorder.recording.AudioChunker;
+import com.lgicc.capacitor.voice_recorder.recording.CurrentRecordingStatus;
 import com.lgicc.capacitor.voice_recorder.recording.CustomAudioRecorder;
 import com.lgicc.capacitor.voice_recorder.recording.FrequencyAnalyser;
+import com.lgicc.capacitor.voice_recorder.recording.FrequencyDataThrottle;
+import com.lgicc.capacitor.voice_recorder.recording.LevelMeter;
+import com.lgicc.capacitor.voice_recorder.recording.MelFeatureExtractor;
+import com.lgicc.capacitor.voice_recorder.recording.PitchTracker;
+import com.lgicc.capacitor.voice_recorder.recording.PolyphaseResampler;
+import com.lgicc.capacitor.voice_recorder.recording.RecordingConfig;
 import com.lgicc.capacitor.voice_recorder.recording.RecordingResult;
+import com.lgicc.capacitor.voice_recorder.recording.RecordingSession;
+import com.lgicc.capacitor.voice_recorder.recording.SilenceGate;
+import com.lgicc.capacitor.voice_recorder.recording.VoiceActivityDetector;
+import com.lgicc.capacitor.voice_recorder.recording.WaveformIndex;
 
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @CapacitorPlugin(
         name = "CapacitorVoiceRecorder",
@@ -39,8 +59,48 @@ import java.util.concurrent.CountDownLatch;
 public class CapacitorVoiceRecorderPlugin extends Plugin {
     static final String RECORD_AUDIO_ALIAS = "voice recording";
 
-    private final CustomAudioRecorder recorder = new CustomAudioRecorder();
-    private final FrequencyAnalyser analyser = new FrequencyAnalyser();
+    private static final String RECORDINGS_DIRECTORY = "voice_recordings";
+    private static final String RESULT_TYPE_FILE = "file";
+    private static final String RESULT_TYPE_BASE64 = "base64";
+    private static final String FREQUENCY_FORMAT_BYTES = "bytes";
+    private static final String FREQUENCY_FORMAT_FRAME = "frame";
+    private static final String FEATURE_TYPE_LOG_MEL = "logMel";
+    private static final String FEATURE_TYPE_MFCC = "mfcc";
+    private static final String AUTO_STOP_SILENCE = "silence";
+    private static final String AUTO_STOP_MICROPHONE_LOST = "microphoneLost";
+    private static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 2000;
+    private static final long DEFAULT_METRICS_INTERVAL_MS = 1000;
+    private static final long DEFAULT_PREPARED_IDLE_TIMEOUT_MS = 30000;
+    private static final long DEFAULT_PREROLL_HISTORY_MS = 5000;
+    private static final int DEFAULT_WAVEFORM_BUCKETS = 512;
+    private static final int MAX_WAVEFORM_BUCKETS = 65536;
+    private static final int MIN_OUTPUT_SAMPLE_RATE = 8000;
+    private static final int MAX_OUTPUT_SAMPLE_RATE = 192000;
+    // Bounds the history, 30 s of 16-bit mono at 48 kHz take about 2.9 MB
+    private static final long MAX_PREROLL_HISTORY_MS = 30000;
+
+    private CustomAudioRecorder recorder;
+    // Keyed by session id, filled when the session starts and flushed when it stops
+    private final Map<String, AudioChunker> audioChunks = new ConcurrentHashMap<>();
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Runnable> metricsEvents = new ConcurrentHashMap<>();
+
+    @Override
+    public void load() {
+        recorder = new CustomAudioRecorder(new File(getContext().getCacheDir(), RECORDINGS_DIRECTORY));
+        recorder.setCaptureListener(() -> getBridge().execute(() -> {
+            for (String sessionId : recorder.getSessionIds()) {
+                autoStopRecording(sessionId, AUTO_STOP_MICROPHONE_LOST);
+            }
+        }));
+    }
+
+    // Prepared resources hold the microphone's HAL session, they are built again on the next prepare or start
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        recorder.releasePrepared();
+    }
 
     @PermissionCallback
     private void recordAudioPermissionCallback(PluginCall call) {
@@ -49,7 +109,8 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
             // If permission granted, start recording
             beginRecording(call);
         } else {
-            // If permission denied, reject with an error message
+            // If permission denied, drop the encoder prepared while the dialog was up and reject
+            recorder.releasePrepared();
             call.reject(ErrorMessage.MISSING_MICROPHONE_PERMISSION);
         }
     }
@@ -63,54 +124,11 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
             obj.put("isGranted", true);
             call.resolve(obj);
         } else {
-            // If permission denied, reject with an error message
-            call.reject(ErrorMessage.MISSING_MICROPHONE_PERMISSION);
-        }
-    }
-
-    private boolean requestPermission(boolean showQuickLink) {
-        Context context = getContext();
-
-        // Check if the permission is already granted
-        if (ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
-            return true; // Permission is already granted
-        } else if (ActivityCompat.shouldShowRequestPermissionRationale(this.getActivity(), Manifest.permission.RECORD_AUDIO)) {
-            // Permission is denied or restricted, show dialog and return false
-            if (showQuickLink) {
+            // Once denied for good Android doesn't ask anymore, only the app settings can grant it then
+            if (call.getBoolean("showQuickLink", true) && !ActivityCompat.shouldShowRequestPermissionRationale(getActivity(), Manifest.permission.RECORD_AUDIO)) {
                 showDeniedMicrophoneDialog();
             }
-            return false;
-        } else {
-            // Permission has not been determined yet, request it
-            final boolean[] permissionGranted = {false};
-
-            // Use CountDownLatch to block until the async result is received
-            final CountDownLatch latch = new CountDownLatch(1);
-
-            // Request the permission
-            ActivityCompat.requestPermissions(this.getActivity(), new String[]{Manifest.permission.RECORD_AUDIO}, 1);
-
-            // Wait for the user response asynchronously (handle in onRequestPermissionsResult)
-            new Handler(Looper.getMainLooper()).post(() -> {
-                latch.countDown(); // Signal the latch to proceed
-            });
-
-            try {
-                latch.await(); // Block the thread until user response is handled
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            // Check the permission status again after the request
-            if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
-                permissionGranted[0] = true;
-            } else {
-                if (showQuickLink) {
-                    showDeniedMicrophoneDialog();
-                }
-            }
-
-            return permissionGranted[0];
+            call.reject(ErrorMessage.MISSING_MICROPHONE_PERMISSION);
         }
     }
 
@@ -141,7 +159,7 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
         PermissionState permissionState = getPermissionState(CapacitorVoiceRecorderPlugin.RECORD_AUDIO_ALIAS);
 
         // 'NOT_GRANTED' | 'DISABLED_BY_USER' | RecordingError.DEVICE_NOT_SUPPORTED | 'GRANTED'
-        if (AudioRecord.getMinBufferSize(this.recorder.getSampleRate(), this.recorder.getChannelConfig(), this.recorder.getAudioFormat()) == AudioRecord.ERROR_BAD_VALUE) {
+        if (RecordingConfig.DEFAULT.getMinBufferSize() == AudioRecord.ERROR_BAD_VALUE) {
             obj.put("status", ErrorMessage.DEVICE_NOT_SUPPORTED);
         }
 
@@ -160,20 +178,31 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
             obj.put("status", "GRANTED");
         }
 
+        obj.put("supportedConfigs", RecordingConfig.probeSupportedConfigs());
+
         call.resolve(obj);
     }
 
     @PluginMethod()
     public void requestPermission(PluginCall call) {
-        Boolean permission = this.requestPermission(true);
-        JSObject obj = new JSObject();
-        obj.put("isGranted", permission);
-        call.resolve(obj);
-        //requestPermissionForAlias(RECORD_AUDIO_ALIAS, call, "recordAudioPermissionCallback");
+        if (doesUserGaveAudioRecordingPermission()) {
+            JSObject obj = new JSObject();
+            obj.put("isGranted", true);
+            call.resolve(obj);
+            return;
+        }
+
+        // Resolves from requestAudioPermissionCallback once the user answered, the plugin thread is not blocked meanwhile
+        requestPermissionForAlias(RECORD_AUDIO_ALIAS, call, "requestAudioPermissionCallback");
     }
 
     @PluginMethod()
     public void startRecording(PluginCall call) {
+        OutputFormat format = getOutputFormat(call);
+        if (format == null) {
+            return;
+        }
+
         // Check if we have permission to record audio
         if (doesUserGaveAudioRecordingPermission()) {
             // If permission is granted, proceed to start recording
@@ -181,13 +210,84 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
         } else {
             // If permission is not granted, request it
             requestPermissionForAlias(RECORD_AUDIO_ALIAS, call, "recordAudioPermissionCallback");
+            // The encoder doesn't need the microphone, it is created while the user looks at the dialog
+            preflightEncoder(call, format);
+        }
+    }
+
+    // Only for the first session, a session joining a running capture uses its configuration anyway. A resampled
+    // session needs an encoder at the output rate of the resolved capture, which isn't known before the start
+    private void preflightEncoder(PluginCall call, OutputFormat format) {
+        if (recorder.isCapturing() || call.getData().optInt("outputSampleRate", 0) != 0) {
+            return;
+        }
+
+        RecordingConfig config = RecordingConfig.of(call.getInt("sampleRate"), call.getInt("channels"), call.getString("encoding"));
+        getBridge().execute(() -> {
+            try {
+                recorder.prepareEncoder(config, format, DEFAULT_PREPARED_IDLE_TIMEOUT_MS);
+            } catch (Exception exp) {
+                // startRecording creates the encoder itself then
+                Log.w("VoiceRecorder", "Could not prepare the encoder", exp);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void prepareRecorder(PluginCall call) {
+        if (!doesUserGaveAudioRecordingPermission()) {
+            call.reject(ErrorMessage.MISSING_MICROPHONE_PERMISSION);
+            return;
+        }
+
+        try {
+            RecordingConfig config = RecordingConfig.of(call.getInt("sampleRate"), call.getInt("channels"), call.getString("encoding"));
+            // Without a format only the AudioRecord is kept warm, the encoder is created when the recording starts
+            OutputFormat format = call.getString("format") != null ? OutputFormat.fromString(call.getString("format")) : null;
+            long idleTimeoutMs = call.getData().optLong("idleTimeoutMs", DEFAULT_PREPARED_IDLE_TIMEOUT_MS);
+
+            call.resolve(recorder.prepare(config, format, idleTimeoutMs).toJSObject());
+        } catch (Exception exp) {
+            call.reject(exp.getMessage(), exp);
+        }
+    }
+
+    @PluginMethod
+    public void startListening(PluginCall call) {
+        if (!doesUserGaveAudioRecordingPermission()) {
+            call.reject(ErrorMessage.MISSING_MICROPHONE_PERMISSION);
+            return;
+        }
+        if (!recorder.isCapturing() && isMicrophoneOccupied()) {
+            call.reject(ErrorMessage.MICROPHONE_IN_USE);
+            return;
+        }
+
+        try {
+            RecordingConfig config = RecordingConfig.of(call.getInt("sampleRate"), call.getInt("channels"), call.getString("encoding"));
+            long historyMs = Math.max(1, Math.min(MAX_PREROLL_HISTORY_MS, call.getData().optLong("historyMs", DEFAULT_PREROLL_HISTORY_MS)));
+
+            call.resolve(recorder.startListening(config, historyMs).toJSObject());
+        } catch (Exception exp) {
+            call.reject(exp.getMessage(), exp);
+        }
+    }
+
+    @PluginMethod
+    public void stopListening(PluginCall call) {
+        try {
+            recorder.stopListening();
+            call.resolve();
+        } catch (Exception exp) {
+            call.reject(exp.getMessage(), exp);
         }
     }
 
     @PluginMethod
     public void beginRecording(PluginCall call) {
 
-        if (isMicrophoneOccupied()) {
+        // Another app holding the microphone only matters when this plugin doesn't capture already
+        if (!recorder.isCapturing() && isMicrophoneOccupied()) {
             call.reject(ErrorMessage.MICROPHONE_IN_USE);
             return;
         }
@@ -195,72 +295,504 @@ public class CapacitorVoiceRecorderPlugin extends Plugin {
         try {
             Log.d("VoiceRecorder", "Starting recording");
 
-            recorder.startRecording((short[] buffer) -> {
+            String sessionId = UUID.randomUUID().toString();
+            OutputFormat format = getOutputFormat(call);
+            if (format == null) {
+                return;
+            }
+            // A session joining a running capture records in its configuration, the analysers have to match it
+            RecordingConfig config = !recorder.isCapturing()
+                    ? RecordingConfig.of(call.getInt("sampleRate"), call.getInt("channels"), call.getString("encoding")).resolveSupported()
+                    : recorder.getConfig();
+            if (config == null) {
+                call.reject(ErrorMessage.DEVICE_NOT_SUPPORTED);
+                return;
+            }
+
+            // outputSampleRate decouples the recording from the capture rate, everything after the capture runs at it
+            int outputSampleRate = call.getData().optInt("outputSampleRate", 0);
+            if (outputSampleRate != 0 && (outputSampleRate < MIN_OUTPUT_SAMPLE_RATE || outputSampleRate > MAX_OUTPUT_SAMPLE_RATE
+                    || !PolyphaseResampler.supports(config.sampleRate(), outputSampleRate))) {
+                rejectInvalidArgument(call, "outputSampleRate");
+                return;
+            }
+            RecordingConfig sessionConfig = outputSampleRate > 0 ? config.withSampleRate(outputSampleRate) : config;
+
+            // frequencyData: false turns the FFT off entirely, e.g. when only levelData is needed
+            FrequencyDataThrottle frequencyData = null;
+            if (!Boolean.FALSE.equals(call.getData().opt("frequencyData"))) {
+                JSObject frequencyOptions = call.getObject("frequencyData", new JSObject());
+                boolean frameFormat = FREQUENCY_FORMAT_FRAME.equals(frequencyOptions.optString("format"));
+                frequencyData = new FrequencyDataThrottle(
+                        sessionConfig,
+                        frequencyOptions.optDouble("eventsPerSecond", 0),
+                        frequencyOptions.optInt("bins", 0),
+                        frequencyOptions.optInt("framesPerEvent", 1),
+                        frequencyOptions.optInt("frameSize", FrequencyAnalyser.DEFAULT_FRAME_SIZE),
+                        "float".equals(frequencyOptions.optString("precision")),
+                        (byte[] batch, int length, int bins, int frames) -> {
+                            JSObject obj = new JSObject();
+                            obj.put("base64", Base64Encoder.encodeToBase64(batch, length));
+                            obj.put("format", frameFormat ? FREQUENCY_FORMAT_FRAME : FREQUENCY_FORMAT_BYTES);
+                            obj.put("bins", bins);
+                            obj.put("frames", frames);
+                            notifyCaptureListeners(sessionId, "frequencyData", obj);
+                        }
+                );
+                // format: 'frame' sends SpectrumFrameEncoder packets, decoded by SpectrumFrameDecoder in JS
+                if (frameFormat) {
+                    frequencyData.useFrameFormat(frequencyOptions.optInt("bitsPerBin", 8), frequencyOptions.optBoolean("delta", false));
+                }
+                frequencyData.setTransformTimer(recorder.getMetrics().getFftLatency());
+            }
 
-                //Log.d("VoiceRecorder", Arrays.toString(buffer));
+            LevelMeter levelData = null;
+            Object levelOption = call.getData().opt("levelData");
+            if (Boolean.TRUE.equals(levelOption) || levelOption instanceof JSONObject) {
+                JSObject levelOptions = call.getObject("levelData", new JSObject());
+                levelData = new LevelMeter(
+                        sessionConfig,
+                        levelOptions.optDouble("eventsPerSecond", LevelMeter.DEFAULT_EVENTS_PER_SECOND),
+                        (double rms, double peak, int clippedSamples) -> {
+                            JSObject obj = new JSObject();
+                            obj.put("rms", rms);
+                            obj.put("peak", peak);
+                            obj.put("rmsDbfs", LevelMeter.toDbfs(rms));
+                            obj.put("peakDbfs", LevelMeter.toDbfs(peak));
+                            obj.put("clipping", clippedSamples > 0);
+                            obj.put("clippedSamples", clippedSamples);
+                            notifyCaptureListeners(sessionId, "levelData", obj);
+                        }
+                );
+            }
 
-                int[] currentFrequencies = analyser.toFrequencies(buffer);
+            MelFeatureExtractor features = null;
+            Object featureOption = call.getData().opt("featureData");
+            if (Boolean.TRUE.equals(featureOption) || featureOption instanceof JSONObject) {
+                JSObject featureOptions = call.getObject("featureData", new JSObject());
+                MelFeatureExtractor.Type type = MelFeatureExtractor.Type.fromString(featureOptions.optString("type"));
+                double hopMs = featureOptions.optDouble("hopMs", MelFeatureExtractor.DEFAULT_HOP_MS);
+                double windowMs = featureOptions.optDouble("windowMs", MelFeatureExtractor.DEFAULT_WINDOW_MS);
+                if (!(hopMs > 0) || !(windowMs > 0)) {
+                    rejectInvalidArgument(call, !(hopMs > 0) ? "featureData.hopMs" : "featureData.windowMs");
+                    return;
+                }
+                int sampleRate = sessionConfig.sampleRate();
+                String typeName = type == MelFeatureExtractor.Type.MFCC ? FEATURE_TYPE_MFCC : FEATURE_TYPE_LOG_MEL;
+                features = new MelFeatureExtractor(
+                        sessionConfig,
+                        new MelFeatureExtractor.Settings(
+                                type,
+                                featureOptions.optInt("melBands", MelFeatureExtractor.DEFAULT_MEL_BANDS),
+                                featureOptions.optInt("coefficients", MelFeatureExtractor.DEFAULT_COEFFICIENTS),
+                                windowMs,
+                                hopMs,
+                                featureOptions.optDouble("minHz", MelFeatureExtractor.DEFAULT_MIN_HZ),
+                                featureOptions.optDouble("maxHz", 0),
+                                featureOptions.optInt("framesPerEvent", MelFeatureExtractor.DEFAULT_FRAMES_PER_EVENT)
+                        ),
+                        (byte[] batch, int length, int frames, int valuesPerFrame, double startMs) -> {
+                            JSObject obj = new JSObject();
+                            obj.put("base64", Base64Encoder.encodeToBase64(batch, length));
+                            obj.put("type", typeName);
+                            obj.put("frames", frames);
+                            obj.put("valuesPerFrame", valuesPerFrame);
+                            obj.put("startMs", startMs);
+                            obj.put("hopMs", hopMs);
+                            obj.put("windowMs", windowMs);
+                            obj.put("sampleRate", sampleRate);
+                            notifyCaptureListeners(sessionId, "featureData", obj);
+                        }
+                );
+                features.setTransformTimer(recorder.getMetrics().getFftLatency());
+            }
 
-                JSObject obj = new JSObject();
-                obj.put("base64", Base64Encoder.encodeToBase64(currentFrequencies));
-                notifyListeners("frequencyData", obj);
-                return null;
-            });
+            PitchTracker pitch = null;
+            Object pitchOption = call.getData().opt("pitchData");
+            if (Boolean.TRUE.equals(pitchOption) || pitchOption instanceof JSONObject) {
+                JSObject pitchOptions = call.getObject("pitchData", new JSObject());
+                double hopMs = pitchOptions.optDouble("hopMs", PitchTracker.DEFAULT_HOP_MS);
+                double minHz = pitchOptions.optDouble("minHz", PitchTracker.DEFAULT_MIN_HZ);
+                double maxHz = pitchOptions.optDouble("maxHz", PitchTracker.DEFAULT_MAX_HZ);
+                if (!(hopMs > 0)) {
+                    rejectInvalidArgument(call, "pitchData.hopMs");
+                    return;
+                }
+                if (!(minHz > 0) || !(maxHz > minHz)) {
+                    rejectInvalidArgument(call, !(minHz > 0) ? "pitchData.minHz" : "pitchData.maxHz");
+                    return;
+                }
+                pitch = new PitchTracker(
+                        sessionConfig,
+                        new PitchTracker.Settings(
+                                minHz,
+                                maxHz,
+                                pitchOptions.optDouble("threshold", PitchTracker.DEFAULT_THRESHOLD),
+                                hopMs,
+                                pitchOptions.optInt("framesPerEvent", PitchTracker.DEFAULT_FRAMES_PER_EVENT)
+                        ),
+                        (float[] frequencies, float[] confidences, int frames, double startMs) -> {
+                            JSObject obj = new JSObject();
+                            obj.put("frequencies", toJSArray(frequencies, frames));
+                            obj.put("confidences", toJSArray(confidences, frames));
+                            obj.put("frames", frames);
+                            obj.put("startMs", startMs);
+                            obj.put("hopMs", hopMs);
+                            notifyCaptureListeners(sessionId, "pitchData", obj);
+                        }
+                );
+                pitch.setFrameTimer(recorder.getMetrics().getFftLatency());
+            }
+
+            AudioChunker chunker = null;
+            Object chunkOption = call.getData().opt("audioChunk");
+            if (Boolean.TRUE.equals(chunkOption) || chunkOption instanceof JSONObject) {
+                JSObject chunkOptions = call.getObject("audioChunk", new JSObject());
+                String chunkFormat = AudioChunker.FORMAT_WAV.equals(chunkOptions.optString("format")) ? AudioChunker.FORMAT_WAV : AudioChunker.FORMAT_PCM;
+                int sampleRate = sessionConfig.sampleRate();
+                int channels = sessionConfig.channelCount();
+                chunker = new AudioChunker(
+                        sessionConfig,
+                        chunkOptions.optInt("durationMs", AudioChunker.DEFAULT_DURATION_MS),
+                        AudioChunker.FORMAT_WAV.equals(chunkFormat),
+                        (long sequence, byte[] chunk, int length, long startFrame, int frames, boolean last) -> {
+                            JSObject obj = new JSObject();
+                            obj.put("sequence", sequence);
+                            obj.put("base64", Base64Encoder.encodeToBase64(chunk, length));
+                            obj.put("format", chunkFormat);
+                            obj.put("sampleRate", sampleRate);
+                            obj.put("channels", channels);
+                            obj.put("startMs", startFrame * 1000.0 / sampleRate);
+                            obj.put("durationMs", frames * 1000.0 / sampleRate);
+                            obj.put("last", last);
+                            notifyCaptureListeners(sessionId, "audioChunk", obj);
+                        }
+                );
+            }
+
+            long checkpointIntervalMs = 0;
+            Object journalOption = call.getData().opt("journal");
+            if (Boolean.TRUE.equals(journalOption) || journalOption instanceof JSONObject) {
+                checkpointIntervalMs = Math.max(1, call.getObject("journal", new JSObject()).optLong("checkpointIntervalMs", DEFAULT_CHECKPOINT_INTERVAL_MS));
+            }
+
+            SilenceGate.Settings vad = null;
+            Object vadOption = call.getData().opt("vad");
+            if (Boolean.TRUE.equals(vadOption) || vadOption instanceof JSONObject) {
+                JSObject vadOptions = call.getObject("vad", new JSObject());
+                vad = new SilenceGate.Settings(
+                        SilenceGate.Mode.fromString(vadOptions.optString("mode")),
+                        vadOptions.optDouble("thresholdDbfs", VoiceActivityDetector.DEFAULT_THRESHOLD_DBFS),
+                        vadOptions.optInt("hangoverMs", VoiceActivityDetector.DEFAULT_HANGOVER_MS),
+                        vadOptions.optBoolean("spectral", false),
+                        vadOptions.optLong("autoStopSilenceMs", 0)
+                );
+            }
+
+            RecordingSession session = recorder.startRecording(sessionId, config, format, AudioBufferListener.combine(
+                    frequencyData != null ? frequencyData::onAudioBuffer : null,
+                    levelData != null ? levelData::onAudioBuffer : null,
+                    features != null ? features::onAudioBuffer : null,
+                    pitch != null ? pitch::onAudioBuffer : null
+            ), chunker != null ? chunker::onAudioBuffer : null, checkpointIntervalMs, vad, new SilenceGate.Listener() {
+                @Override
+                public void onSpeechStart(long timeMs) {
+                    JSObject obj = new JSObject();
+                    obj.put("timeMs", timeMs);
+                    notifyCaptureListeners(sessionId, "speechStart", obj);
+                }
+
+                @Override
+                public void onSpeechEnd(long timeMs) {
+                    JSObject obj = new JSObject();
+                    obj.put("timeMs", timeMs);
+                    notifyCaptureListeners(sessionId, "speechEnd", obj);
+                }
+
+                // Called on the storage stage, which stopRecording waits for, so the stop runs on the plugin thread
+                @Override
+                public void onSilenceTimeout() {
+                    getBridge().execute(() -> autoStopRecording(sessionId, AUTO_STOP_SILENCE));
+                }
+            }, Math.max(0, call.getData().optLong("prerollMs", 0)), outputSampleRate, PolyphaseResampler.Quality.fromString(call.getString("resampleQuality")));
+            if (chunker != null) {
+                audioChunks.put(sessionId, chunker);
+            }
+
+            Object metricsOption = call.getData().opt("metrics");
+            if (Boolean.TRUE.equals(metricsOption) || metricsOption instanceof JSONObject) {
+                startMetricsEvents(sessionId, Math.max(100, call.getObject("metrics", new JSObject()).optLong("intervalMs", DEFAULT_METRICS_INTERVAL_MS)));
+            }
 
             Log.d("VoiceRecorder", "Recording started");
-            call.resolve();
+            JSObject result = session.getConfig().toJSObject();
+            result.put("sessionId", sessionId);
+            result.put("captureSampleRate", recorder.getSampleRate());
+            call.resolve(result);
         } catch (Exception exp) {
             call.reject(ErrorMessage.DEVICE_NOT_SUPPORTED, exp);
         }
     }
 
+    // The recorder only throws ErrorMessage codes for a call in the wrong state
     @PluginMethod()
     public void pauseRecording(PluginCall call) {
         try {
-            recorder.pauseRecording();
+            recorder.pauseRecording(call.getString("sessionId"));
             call.resolve();
         } catch (Exception exp) {
-            call.reject(ErrorMessage.UNKNOWN_ERROR, exp);
+            call.reject(exp.getMessage(), exp);
         }
     }
 
     @PluginMethod()
     public void resumeRecording(PluginCall call) {
         try {
-            recorder.resumeRecording();
+            recorder.resumeRecording(call.getString("sessionId"));
+            call.resolve();
         } catch (Exception exp) {
-            call.reject(ErrorMessage.UNKNOWN_ERROR, exp);
+            call.reject(exp.getMessage(), exp);
         }
     }
 
     @PluginMethod
     public void stopRecording(PluginCall call) {
+        // Without a sessionId the most recently started session stops
+        RecordingSession session = recorder.getSession(call.getString("sessionId"));
+        if (session == null) {
+            call.reject(ErrorMessage.NOT_RECORDING);
+            return;
+        }
+
         try {
-            RecordingResult recording = recorder.stopRecording();
-            call.resolve(recording.toJSObject());
+            RecordingResult recording;
+            try {
+                recording = recorder.stopRecording(session.getId());
+            } finally {
+                flushAudioChunks(session.getId());
+                stopMetricsEvents(session.getId());
+            }
+
+            if (RESULT_TYPE_BASE64.equals(call.getString("resultType", RESULT_TYPE_FILE))) {
+                JSObject result = recording.toBase64JSObject();
+                putPipelineCounters(result, session);
+                recording.file().delete();
+                WaveformIndex.fileFor(recording.file()).delete();
+                call.resolve(result);
+                return;
+            }
+
+            JSObject result = toFileResult(recording);
+            putPipelineCounters(result, session);
+            call.resolve(result);
         } catch (Exception exp) {
             call.reject(ErrorMessage.NOT_RECORDING, exp);
         }
     }
 
+    private void autoStopRecording(String sessionId, String reason) {
+        // A stopRecording call from JS may have come first
+        RecordingSession session = recorder.getSession(sessionId);
+        if (session == null) {
+            return;
+        }
+
+        try {
+            RecordingResult recording;
+            try {
+                recording = recorder.stopRecording(sessionId);
+            } finally {
+                flushAudioChunks(sessionId);
+                stopMetricsEvents(sessionId);
+            }
+
+            JSObject result = toFileResult(recording);
+            putPipelineCounters(result, session);
+            result.put("reason", reason);
+            notifyListeners("recordingAutoStopped", result);
+        } catch (Exception exp) {
+            Log.e("VoiceRecorder", "Could not stop the recording", exp);
+        }
+    }
+
+    @PluginMethod
+    public void recoverRecordings(PluginCall call) {
+        JSArray recordings = new JSArray();
+        for (RecordingResult recording : recorder.recoverRecordings()) {
+            recordings.put(toFileResult(recording));
+        }
+
+        JSObject result = new JSObject();
+        result.put("recordings", recordings);
+        call.resolve(result);
+    }
+
+    private JSObject toFileResult(RecordingResult recording) {
+        JSObject result = recording.toJSObject();
+        result.put("webPath", FileUtils.getPortablePath(getContext(), getBridge().getLocalUrl(), Uri.fromFile(recording.file())));
+        return result;
+    }
+
+    @PluginMethod
+    public void deleteRecording(PluginCall call) {
+        String path = call.getString("path");
+        File recordingsDirectory = new File(getContext().getCacheDir(), RECORDINGS_DIRECTORY);
+
+        // Only files the recorder itself has written may be deleted through the bridge
+        File file = path != null ? new File(path) : null;
+        if (file == null || !recordingsDirectory.equals(file.getAbsoluteFile().getParentFile()) || !file.delete()) {
+            call.reject(ErrorMessage.RECORDING_NOT_FOUND);
+            return;
+        }
+        WaveformIndex.fileFor(file).delete();
+
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getWaveform(PluginCall call) {
+        // A path reads the peaks saved with a finished recording, otherwise those of a session recording right now
+        String path = call.getString("path");
+        WaveformIndex waveform;
+        if (path != null) {
+            File file = new File(path);
+            File recordingsDirectory = new File(getContext().getCacheDir(), RECORDINGS_DIRECTORY);
+            try {
+                waveform = recordingsDirectory.equals(file.getAbsoluteFile().getParentFile()) && file.exists() ? WaveformIndex.load(file) : null;
+            } catch (IOException exp) {
+                call.reject(ErrorMessage.UNKNOWN_ERROR, exp);
+                return;
+            }
+        } else {
+            RecordingSession session = recorder.getSession(call.getString("sessionId"));
+            waveform = session != null ? session.getWaveform() : null;
+        }
+        if (waveform == null) {
+            call.reject(ErrorMessage.RECORDING_NOT_FOUND);
+            return;
+        }
+
+        int sampleRate = waveform.getSampleRate();
+        long startFrame = (long) (Math.max(0, call.getData().optDouble("startMs", 0)) * sampleRate / 1000);
+        long endFrame = call.getData().has("endMs") ? (long) (call.getData().optDouble("endMs") * sampleRate / 1000) : Long.MAX_VALUE;
+        int buckets = Math.max(1, Math.min(MAX_WAVEFORM_BUCKETS, call.getData().optInt("buckets", DEFAULT_WAVEFORM_BUCKETS)));
+        WaveformIndex.Waveform peaks = waveform.query(startFrame, endFrame, buckets);
+
+        JSObject result = new JSObject();
+        result.put("min", toJSArray(peaks.min(), peaks.min().length));
+        result.put("max", toJSArray(peaks.max(), peaks.max().length));
+        result.put("startMs", peaks.startFrame() * 1000.0 / sampleRate);
+        result.put("endMs", peaks.endFrame() * 1000.0 / sampleRate);
+        call.resolve(result);
+    }
+
 
     @PluginMethod
     public void getCurrentStatus(PluginCall call) {
-        JSObject obj = new JSObject();
-        String status = "NOT_RECORDING";
+        String sessionId = call.getString("sessionId");
+        RecordingSession session = recorder.getSessionOrLast(sessionId);
+        CurrentRecordingStatus current = sessionId != null
+                ? (session != null ? session.getStatus() : CurrentRecordingStatus.NONE)
+                : recorder.currentRecordingStatus();
 
-        if(recorder.getIsRecording()) {
-            status = "RECORDING";
-        } else if(recorder.getIsPaused()) {
-            status = "PAUSED";
+        JSObject obj = new JSObject();
+        String status = switch (current) {
+            case RECORDING -> "RECORDING";
+            case PAUSED -> "PAUSED";
+            case NONE -> "NOT_RECORDING";
+        };
+
+        JSArray sessionIds = new JSArray();
+        for (String id : recorder.getSessionIds()) {
+            sessionIds.put(id);
         }
 
         obj.put("status", status);
+        obj.put("sessionIds", sessionIds);
+        obj.put("listening", recorder.isListening());
+        putPipelineCounters(obj, session);
         call.resolve(obj);
     }
 
+    @PluginMethod
+    public void getRecorderMetrics(PluginCall call) {
+        call.resolve(recorder.getMetricsSnapshot(call.getString("sessionId")));
+    }
+
+    private void startMetricsEvents(String sessionId, long intervalMs) {
+        Runnable events = new Runnable() {
+            @Override
+            public void run() {
+                notifyListeners("recorderMetrics", recorder.getMetricsSnapshot(sessionId));
+                metricsHandler.postDelayed(this, intervalMs);
+            }
+        };
+        metricsEvents.put(sessionId, events);
+        metricsHandler.postDelayed(events, intervalMs);
+    }
+
+    private void stopMetricsEvents(String sessionId) {
+        Runnable events = metricsEvents.remove(sessionId);
+        if (events != null) {
+            metricsHandler.removeCallbacks(events);
+        }
+    }
+
+    // Events sent from the capture stages, timed because a slow bridge backs up the stage that sends them
+    private void notifyCaptureListeners(String sessionId, String eventName, JSObject data) {
+        data.put("sessionId", sessionId);
+        long startedAt = System.nanoTime();
+        notifyListeners(eventName, data);
+        recorder.getMetrics().getNotifyLatency().recordSince(startedAt);
+    }
+
+    // The capture stages are closed once stopRecording returns, so the last chunk goes out before the promise settles
+    private void flushAudioChunks(String sessionId) {
+        AudioChunker chunker = audioChunks.remove(sessionId);
+        if (chunker != null) {
+            chunker.flush();
+        }
+    }
+
+    // Boxed, JSArray.put(double) declares a JSONException for non-finite values
+    private static JSArray toJSArray(float[] values, int count) {
+        JSArray array = new JSArray();
+        for (int i = 0; i < count; i++) {
+            array.put(Float.valueOf(values[i]));
+        }
+        return array;
+    }
+
+    // Null once the call is rejected for an unknown format
+    private OutputFormat getOutputFormat(PluginCall call) {
+        try {
+            return OutputFormat.fromString(call.getString("format"));
+        } catch (IllegalArgumentException exp) {
+            rejectInvalidArgument(call, "format");
+            return null;
+        }
+    }
+
+    private void rejectInvalidArgument(PluginCall call, String option) {
+        JSObject data = new JSObject();
+        data.put("option", option);
+        call.reject(ErrorMessage.INVALID_ARGUMENT, null, null, data);
+    }
+
+    private void putPipelineCounters(JSObject obj, RecordingSession session) {
+        if (session == null) {
+            obj.put("overruns", 0);
+            obj.put("droppedBuffers", 0);
+            obj.put("droppedChunkBuffers", 0);
+            return;
+        }
+
+        obj.put("sessionId", session.getId());
+        session.putCounters(obj);
+    }
+
     private boolean doesUserGaveAudioRecordingPermission() {
-        if (AudioRecord.getMinBufferSize(this.recorder.getSampleRate(), this.recorder.getChannelConfig(), this.recorder.getAudioFormat()) != AudioRecord.ERROR_BAD_VALUE) {
+        if (RecordingConfig.DEFAULT.getMinBufferSize() != AudioRecord.ERROR_BAD_VALUE) {
             return getPermissionState(CapacitorVoiceRecorderPlugin.RECORD_AUDIO_ALIAS).equals(PermissionState.GRANTED);
         }
 
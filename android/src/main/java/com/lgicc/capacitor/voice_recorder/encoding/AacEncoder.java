@@ -0,0 +1,170 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class AacEncoder implements AudioEncoder {
+
+    private static final long TIMEOUT_US = 10_000;
+    private static final int BITS_PER_SECOND_PER_CHANNEL = 64_000;
+
+    private final File file;
+    private final int sampleRate;
+    private final int channelCount;
+    private final MediaCodec codec;
+    private final MediaMuxer muxer;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    private int trackIndex = -1;
+    private boolean muxerStarted = false;
+    private long queuedFrames = 0;
+    private long encodedSize = 0;
+
+    public AacEncoder(File file, int sampleRate, int channelCount) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channelCount);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, BITS_PER_SECOND_PER_CHANNEL * channelCount);
+
+        codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IOException | RuntimeException exp) {
+            codec.release();
+            throw exp;
+        }
+    }
+
+    @Override
+    public String getMimeType() {
+        return OutputFormat.AAC.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return encodedSize;
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        int offset = 0;
+
+        while (offset < length) {
+            int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+            if (inputIndex >= 0) {
+                ByteBuffer input = codec.getInputBuffer(inputIndex);
+                input.clear();
+                input.order(ByteOrder.nativeOrder());
+
+                // Only whole frames so the presentation time stays exact
+                int count = Math.min(length - offset, input.remaining() / 2 / channelCount * channelCount);
+                for (int i = 0; i < count; i++) {
+                    input.putShort(samples[offset + i]);
+                }
+
+                codec.queueInputBuffer(inputIndex, 0, count * 2, presentationTimeUs(), 0);
+                queuedFrames += count / channelCount;
+                offset += count;
+            }
+
+            drain(false);
+        }
+    }
+
+    @Override
+    public File finish() throws IOException {
+        try {
+            int inputIndex;
+            while ((inputIndex = codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                drain(false);
+            }
+            codec.queueInputBuffer(inputIndex, 0, 0, presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            drain(true);
+
+            if (muxerStarted) {
+                muxer.stop();
+            }
+        } catch (IllegalStateException exp) {
+            throw new IOException("Could not finish AAC encoding", exp);
+        } finally {
+            release();
+        }
+
+        return file;
+    }
+
+    @Override
+    public void discard() {
+        try {
+            if (muxerStarted) {
+                muxer.stop();
+            }
+        } catch (IllegalStateException ignored) {
+        }
+
+        release();
+        file.delete();
+    }
+
+    private long presentationTimeUs() {
+        return queuedFrames * 1_000_000L / sampleRate;
+    }
+
+    private void drain(boolean endOfStream) {
+        while (true) {
+            int outputIndex = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? TIMEOUT_US : 0);
+
+            if (outputIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                trackIndex = muxer.addTrack(codec.getOutputFormat());
+                muxer.start();
+                muxerStarted = true;
+            } else if (outputIndex >= 0) {
+                ByteBuffer output = codec.getOutputBuffer(outputIndex);
+
+                // The codec specific data is already part of the output format handed to the muxer
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    bufferInfo.size = 0;
+                }
+
+                if (bufferInfo.size > 0 && muxerStarted) {
+                    output.position(bufferInfo.offset);
+                    output.limit(bufferInfo.offset + bufferInfo.size);
+                    muxer.writeSampleData(trackIndex, output, bufferInfo);
+                    encodedSize += bufferInfo.size;
+                }
+
+                codec.releaseOutputBuffer(outputIndex, false);
+
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void release() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException ignored) {
+        }
+
+        codec.release();
+        muxer.release();
+    }
+}
@@ -0,0 +1,26 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface AudioEncoder {
+    // Called from the capture thread for every buffer, implementations must not hold on to the samples array
+    void encode(short[] samples, int length) throws IOException;
+
+    // Only encoders that can store 32-bit float samples as they are accept them, all others get 16-bit samples
+    default boolean acceptsFloat() {
+        return false;
+    }
+
+    default void encode(float[] samples, int length) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    File finish() throws IOException;
+
+    void discard();
+
+    String getMimeType();
+
+    long getEncodedSize();
+}
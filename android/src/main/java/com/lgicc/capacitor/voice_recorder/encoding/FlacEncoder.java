@@ -0,0 +1,484 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Pure Java 16-bit FLAC encoder using fixed predictors and partitioned Rice coding, frames are written as soon as a block is full
+public class FlacEncoder implements AudioEncoder {
+
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int STREAMINFO_OFFSET = 8;
+    private static final int STREAMINFO_LENGTH = 34;
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channelCount;
+    private final MessageDigest md5;
+
+    private final int[][] block;
+    private final int[] residual = new int[BLOCK_SIZE];
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final BitWriter writer;
+    private final ByteBuffer frameBuffer;
+    private byte[] md5Buffer = new byte[0];
+
+    private int blockFill = 0;
+    private int frameNumber = 0;
+    private long totalFrames = 0;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize = 0;
+    private long encodedSize = 0;
+
+    public FlacEncoder(File file, int sampleRate, int channelCount) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.block = new int[channelCount][BLOCK_SIZE];
+
+        // A frame is never larger than its verbatim encoding plus header and footer
+        this.writer = new BitWriter(channelCount * (BLOCK_SIZE * 2 + 2) + 32);
+        this.frameBuffer = ByteBuffer.wrap(writer.buffer);
+
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IOException(exp);
+        }
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        channel.truncate(0);
+
+        // Stream marker and a STREAMINFO block which gets patched with the real totals at the end
+        ByteBuffer header = ByteBuffer.allocate(STREAMINFO_OFFSET + STREAMINFO_LENGTH);
+        header.put(new byte[] { 'f', 'L', 'a', 'C' });
+        header.putInt(0x80 << 24 | STREAMINFO_LENGTH);
+        putStreamInfo(header, new byte[16]);
+        header.flip();
+        writeFully(header);
+    }
+
+    @Override
+    public String getMimeType() {
+        return OutputFormat.FLAC.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return encodedSize;
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        updateMd5(samples, length);
+
+        for (int i = 0; i + channelCount <= length; i += channelCount) {
+            for (int c = 0; c < channelCount; c++) {
+                block[c][blockFill] = samples[i + c];
+            }
+
+            if (++blockFill == BLOCK_SIZE) {
+                encodeFrame(BLOCK_SIZE);
+            }
+        }
+    }
+
+    @Override
+    public File finish() throws IOException {
+        try {
+            if (blockFill > 0) {
+                encodeFrame(blockFill);
+            }
+
+            ByteBuffer streamInfo = ByteBuffer.allocate(STREAMINFO_LENGTH);
+            putStreamInfo(streamInfo, md5.digest());
+            streamInfo.flip();
+
+            long position = STREAMINFO_OFFSET;
+            while (streamInfo.hasRemaining()) {
+                position += channel.write(streamInfo, position);
+            }
+            channel.force(false);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return file;
+    }
+
+    @Override
+    public void discard() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+
+        file.delete();
+    }
+
+    private void putStreamInfo(ByteBuffer target, byte[] md5Signature) {
+        int blockSize = totalFrames > 0 && totalFrames < BLOCK_SIZE ? (int) totalFrames : BLOCK_SIZE;
+
+        target.putShort((short) blockSize);
+        target.putShort((short) blockSize);
+        putInt24(target, maxFrameSize > 0 ? minFrameSize : 0);
+        putInt24(target, maxFrameSize);
+        target.putLong(
+                (long) sampleRate << 44
+                        | (long) (channelCount - 1) << 41
+                        | (long) (BITS_PER_SAMPLE - 1) << 36
+                        | totalFrames & 0xFFFFFFFFFL
+        );
+        target.put(md5Signature);
+    }
+
+    private static void putInt24(ByteBuffer target, int value) {
+        target.put((byte) (value >>> 16));
+        target.put((byte) (value >>> 8));
+        target.put((byte) value);
+    }
+
+    private void updateMd5(short[] samples, int length) {
+        if (md5Buffer.length < length * 2) {
+            md5Buffer = new byte[length * 2];
+        }
+
+        // The signature covers the interleaved samples in little endian byte order
+        for (int i = 0; i < length; i++) {
+            md5Buffer[2 * i] = (byte) samples[i];
+            md5Buffer[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+
+        md5.update(md5Buffer, 0, length * 2);
+    }
+
+    private void encodeFrame(int blockSize) throws IOException {
+        writer.reset();
+
+        // Frame header: sync code, fixed blocking, block size and sample rate taken from the end of the header / STREAMINFO
+        writer.writeBits(0x3FFE, 14);
+        writer.writeBits(0, 2);
+        writer.writeBits(0b0111, 4);
+        writer.writeBits(0b0000, 4);
+        writer.writeBits(channelCount - 1, 4);
+        writer.writeBits(0b100, 3);
+        writer.writeBits(0, 1);
+        writeUtf8(frameNumber);
+        writer.writeBits(blockSize - 1, 16);
+        writer.writeBits(crc8(writer.buffer, writer.position), 8);
+
+        for (int c = 0; c < channelCount; c++) {
+            encodeSubframe(block[c], blockSize);
+        }
+
+        writer.alignToByte();
+        writer.writeBits(crc16(writer.buffer, writer.position), 16);
+
+        int frameSize = writer.position;
+        frameBuffer.clear();
+        frameBuffer.limit(frameSize);
+        writeFully(frameBuffer);
+
+        minFrameSize = Math.min(minFrameSize, frameSize);
+        maxFrameSize = Math.max(maxFrameSize, frameSize);
+        totalFrames += blockSize;
+        frameNumber++;
+        blockFill = 0;
+    }
+
+    private void encodeSubframe(int[] samples, int blockSize) {
+        boolean constant = true;
+        for (int i = 1; i < blockSize && constant; i++) {
+            constant = samples[i] == samples[0];
+        }
+
+        if (constant) {
+            writer.writeBits(0b00000000, 8);
+            writer.writeBits(samples[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        long verbatimBits = 8 + (long) BITS_PER_SAMPLE * blockSize;
+
+        if (blockSize > MAX_FIXED_ORDER) {
+            int order = bestFixedOrder(samples, blockSize);
+            computeResidual(samples, blockSize, order);
+
+            int partitionOrder = bestPartitionOrder(blockSize, order);
+            long fixedBits = 8 + (long) BITS_PER_SAMPLE * order + residualBits(blockSize, order, partitionOrder);
+
+            if (fixedBits < verbatimBits) {
+                writer.writeBits(0b00010000 | order << 1, 8);
+                for (int i = 0; i < order; i++) {
+                    writer.writeBits(samples[i], BITS_PER_SAMPLE);
+                }
+                writeResidual(blockSize, order, partitionOrder);
+                return;
+            }
+        }
+
+        writer.writeBits(0b00000010, 8);
+        for (int i = 0; i < blockSize; i++) {
+            writer.writeBits(samples[i], BITS_PER_SAMPLE);
+        }
+    }
+
+    private static int bestFixedOrder(int[] x, int n) {
+        long error0 = 0, error1 = 0, error2 = 0, error3 = 0, error4 = 0;
+
+        for (int i = MAX_FIXED_ORDER; i < n; i++) {
+            long e0 = x[i];
+            long e1 = e0 - x[i - 1];
+            long e2 = e1 - (x[i - 1] - x[i - 2]);
+            long e3 = e2 - (x[i - 1] - 2L * x[i - 2] + x[i - 3]);
+            long e4 = e3 - (x[i - 1] - 3L * x[i - 2] + 3L * x[i - 3] - x[i - 4]);
+
+            error0 += Math.abs(e0);
+            error1 += Math.abs(e1);
+            error2 += Math.abs(e2);
+            error3 += Math.abs(e3);
+            error4 += Math.abs(e4);
+        }
+
+        long[] errors = { error0, error1, error2, error3, error4 };
+        int order = 0;
+        for (int i = 1; i <= MAX_FIXED_ORDER; i++) {
+            if (errors[i] < errors[order]) {
+                order = i;
+            }
+        }
+        return order;
+    }
+
+    private void computeResidual(int[] x, int n, int order) {
+        for (int i = order; i < n; i++) {
+            int prediction;
+            switch (order) {
+                case 1:
+                    prediction = x[i - 1];
+                    break;
+                case 2:
+                    prediction = 2 * x[i - 1] - x[i - 2];
+                    break;
+                case 3:
+                    prediction = 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                    break;
+                case 4:
+                    prediction = 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                    break;
+                default:
+                    prediction = 0;
+            }
+
+            int r = x[i] - prediction;
+            residual[i] = (r << 1) ^ (r >> 31);
+        }
+    }
+
+    private int bestPartitionOrder(int n, int order) {
+        int maxPartitionOrder = 0;
+        while (maxPartitionOrder < MAX_PARTITION_ORDER
+                && (n & ((2 << maxPartitionOrder) - 1)) == 0
+                && (n >> (maxPartitionOrder + 1)) > order) {
+            maxPartitionOrder++;
+        }
+
+        // Sums of the finest partitioning, coarser ones are merged from them
+        int partitions = 1 << maxPartitionOrder;
+        int partitionSize = n >> maxPartitionOrder;
+        for (int p = 0; p < partitions; p++) {
+            long sum = 0;
+            for (int i = Math.max(p * partitionSize, order); i < (p + 1) * partitionSize; i++) {
+                sum += residual[i];
+            }
+            partitionSums[p] = sum;
+        }
+
+        int bestOrder = maxPartitionOrder;
+        long bestBits = Long.MAX_VALUE;
+        for (int partitionOrder = maxPartitionOrder; partitionOrder >= 0; partitionOrder--) {
+            partitions = 1 << partitionOrder;
+            partitionSize = n >> partitionOrder;
+
+            long bits = 0;
+            for (int p = 0; p < partitions; p++) {
+                int count = p == 0 ? partitionSize - order : partitionSize;
+                int k = riceParameter(partitionSums[p], count);
+                bits += 4 + (long) count * (k + 1) + (partitionSums[p] >> k);
+            }
+
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = partitionOrder;
+            }
+
+            for (int p = 0; p < partitions / 2; p++) {
+                partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+            }
+        }
+
+        return bestOrder;
+    }
+
+    private long residualBits(int n, int order, int partitionOrder) {
+        int partitions = 1 << partitionOrder;
+        int partitionSize = n >> partitionOrder;
+        long bits = 6;
+
+        for (int p = 0; p < partitions; p++) {
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += residual[i];
+            }
+
+            int k = riceParameter(sum, end - start);
+            riceParameters[p] = k;
+
+            bits += 4 + (long) (end - start) * (k + 1);
+            for (int i = start; i < end; i++) {
+                bits += residual[i] >>> k;
+            }
+        }
+
+        return bits;
+    }
+
+    private void writeResidual(int n, int order, int partitionOrder) {
+        int partitions = 1 << partitionOrder;
+        int partitionSize = n >> partitionOrder;
+
+        writer.writeBits(0b00, 2);
+        writer.writeBits(partitionOrder, 4);
+
+        for (int p = 0; p < partitions; p++) {
+            int k = riceParameters[p];
+            writer.writeBits(k, 4);
+
+            for (int i = p == 0 ? order : p * partitionSize; i < (p + 1) * partitionSize; i++) {
+                writer.writeRice(residual[i], k);
+            }
+        }
+    }
+
+    private static int riceParameter(long sum, int count) {
+        if (count <= 0 || sum < count) {
+            return 0;
+        }
+
+        int k = 63 - Long.numberOfLeadingZeros(sum / count);
+        return Math.min(k, MAX_RICE_PARAMETER);
+    }
+
+    private void writeUtf8(int value) {
+        if (value < 0x80) {
+            writer.writeBits(value, 8);
+            return;
+        }
+
+        int bytes = value < 0x800 ? 2 : value < 0x10000 ? 3 : value < 0x200000 ? 4 : value < 0x4000000 ? 5 : 6;
+        writer.writeBits((0xFF00 >> bytes) & 0xFF | value >>> (6 * (bytes - 1)), 8);
+        for (int i = bytes - 2; i >= 0; i--) {
+            writer.writeBits(0x80 | (value >>> (6 * i)) & 0x3F, 8);
+        }
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            encodedSize += channel.write(source);
+        }
+    }
+
+    static int crc8(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    static int crc16(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static class BitWriter {
+        final byte[] buffer;
+        int position;
+        private long accumulator;
+        private int pendingBits;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void reset() {
+            position = 0;
+            accumulator = 0;
+            pendingBits = 0;
+        }
+
+        void writeBits(int value, int bits) {
+            accumulator = (accumulator << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+            pendingBits += bits;
+
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                buffer[position++] = (byte) (accumulator >>> pendingBits);
+            }
+        }
+
+        void writeRice(int value, int k) {
+            int quotient = value >>> k;
+            while (quotient >= 24) {
+                writeBits(0, 24);
+                quotient -= 24;
+            }
+
+            writeBits(1, quotient + 1);
+            if (k > 0) {
+                writeBits(value, k);
+            }
+        }
+
+        void alignToByte() {
+            if (pendingBits > 0) {
+                writeBits(0, 8 - pendingBits);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+public enum OutputFormat {
+    WAV("audio/wav", ".wav"),
+    AAC("audio/mp4", ".m4a"),
+    FLAC("audio/flac", ".flac");
+
+    private final String mimeType;
+    private final String fileExtension;
+
+    OutputFormat(String mimeType, String fileExtension) {
+        this.mimeType = mimeType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public AudioEncoder createEncoder(File file, int sampleRate, int channelCount, boolean isFloat) throws IOException {
+        switch (this) {
+            case AAC:
+                return new AacEncoder(file, sampleRate, channelCount);
+            case FLAC:
+                return new FlacEncoder(file, sampleRate, channelCount);
+            case WAV:
+            default:
+                return new WavFileWriter(file, sampleRate, channelCount, isFloat);
+        }
+    }
+
+    public static OutputFormat fromString(String format) {
+        if (format == null) {
+            return WAV;
+        }
+
+        return OutputFormat.valueOf(format.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,163 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+public class WavFileWriter implements AudioEncoder {
+
+    // Leaves room for the ds64 chunk, so recordings past 4 GB become RF64 without moving any audio
+    private static final int HEADER_SIZE = WavHeader.RESERVED_SIZE;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    // The one header buffer of the writer, rebuilt in place whenever the sizes change
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private ByteBuffer sampleBuffer;
+
+    private final int sampleRate;
+    private final int numChannels;
+    private final boolean isFloat;
+    private long dataSize = 0;
+
+    public WavFileWriter(File file, int sampleRate, int numChannels) throws IOException {
+        this(file, sampleRate, numChannels, false);
+    }
+
+    public WavFileWriter(File file, int sampleRate, int numChannels, boolean isFloat) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.numChannels = numChannels;
+        this.isFloat = isFloat;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+
+        // Reserve the header with zero sizes, it gets rewritten in place once the recording is finished
+        channel.truncate(0);
+        writeHeader();
+        channel.position(HEADER_SIZE);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public String getMimeType() {
+        return OutputFormat.WAV.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return dataSize;
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        if (sampleBuffer == null || sampleBuffer.capacity() < length * 2) {
+            sampleBuffer = ByteBuffer.allocateDirect(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        sampleBuffer.clear();
+        for (int i = 0; i < length; i++) {
+            sampleBuffer.putShort(samples[i]);
+        }
+        sampleBuffer.flip();
+
+        write(sampleBuffer);
+    }
+
+    @Override
+    public boolean acceptsFloat() {
+        return isFloat;
+    }
+
+    @Override
+    public void encode(float[] samples, int length) throws IOException {
+        if (sampleBuffer == null || sampleBuffer.capacity() < length * 4) {
+            sampleBuffer = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        sampleBuffer.clear();
+        for (int i = 0; i < length; i++) {
+            sampleBuffer.putFloat(samples[i]);
+        }
+        sampleBuffer.flip();
+
+        write(sampleBuffer);
+    }
+
+    public void write(ByteBuffer pcmData) throws IOException {
+        while (pcmData.hasRemaining()) {
+            dataSize += channel.write(pcmData);
+        }
+    }
+
+    @Override
+    public File finish() throws IOException {
+        try {
+            writeHeader();
+            channel.force(false);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return file;
+    }
+
+    // Makes everything written so far durable and playable, the header covers the data up to this point
+    public void checkpoint() throws IOException {
+        writeHeader();
+        channel.force(false);
+    }
+
+    // Finalises a file whose writer never got to finish, e.g. after the process was killed. Only touches the header
+    // and a partial last frame, so it takes the same time for any length
+    public static WavHeader.Info repairHeader(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            WavHeader.Info info = WavHeader.read(channel);
+
+            int blockAlign = Math.max(1, info.blockAlign());
+            long dataSize = (channel.size() - info.dataOffset()) / blockAlign * blockAlign;
+            channel.truncate(info.dataOffset() + dataSize);
+
+            ByteBuffer header = ByteBuffer.allocate((int) info.dataOffset());
+            WavHeader.write(header, dataSize, info.sampleRate(), info.channelCount(), info.bitsPerSample(), info.isFloat(), info.dataOffset() == WavHeader.RESERVED_SIZE);
+            writeFully(channel, header, 0);
+            channel.force(false);
+
+            return new WavHeader.Info(info.formatTag(), info.channelCount(), info.sampleRate(), info.byteRate(), info.blockAlign(), info.bitsPerSample(), info.dataOffset(), dataSize);
+        }
+    }
+
+    @Override
+    public void discard() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+
+        file.delete();
+    }
+
+    // Positional write, the data keeps appending at the channel position
+    private void writeHeader() throws IOException {
+        WavHeader.write(header, dataSize, sampleRate, numChannels, isFloat ? 32 : 16, isFloat, true);
+        writeFully(channel, header, 0);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Builds and parses RIFF/WAVE headers in place, without any intermediate buffers
+public final class WavHeader {
+
+    public static final short FORMAT_PCM = 1;
+    public static final short FORMAT_IEEE_FLOAT = 3;
+
+    // The canonical header: RIFF, fmt and data
+    public static final int SIZE = 44;
+    // With a 28 byte JUNK chunk after WAVE that turns into ds64 once the file outgrows 32-bit sizes (EBU Tech 3306)
+    public static final int RESERVED_SIZE = SIZE + 36;
+
+    private static final long MAX_32_BIT_SIZE = 0xFFFFFFFFL;
+    private static final int DS64_SIZE = 28;
+    // No file we write has more chunks ahead of data, this only stops a walk through garbage
+    private static final int MAX_CHUNKS = 16;
+
+    public record Info(short formatTag, int channelCount, int sampleRate, int byteRate, int blockAlign, int bitsPerSample, long dataOffset, long dataSize) {
+        public boolean isFloat() {
+            return formatTag == FORMAT_IEEE_FLOAT;
+        }
+    }
+
+    private WavHeader() {
+    }
+
+    // Fills target from position 0 and flips it. With reserveDs64 the header switches to RF64 when the sizes need it
+    public static void write(ByteBuffer target, long dataSize, int sampleRate, int numChannels, int bitsPerSample, boolean isFloat, boolean reserveDs64) {
+        int headerSize = reserveDs64 ? RESERVED_SIZE : SIZE;
+        long riffSize = headerSize - 8 + dataSize;
+        boolean rf64 = reserveDs64 && riffSize > MAX_32_BIT_SIZE;
+        int blockAlign = numChannels * bitsPerSample / 8;
+
+        target.clear();
+        target.order(ByteOrder.LITTLE_ENDIAN);
+
+        putId(target, rf64 ? "RF64" : "RIFF");
+        target.putInt((int) Math.min(riffSize, MAX_32_BIT_SIZE));
+        putId(target, "WAVE");
+
+        if (reserveDs64) {
+            putId(target, rf64 ? "ds64" : "JUNK");
+            target.putInt(DS64_SIZE);
+            target.putLong(rf64 ? riffSize : 0);
+            target.putLong(rf64 ? dataSize : 0);
+            target.putLong(rf64 ? dataSize / blockAlign : 0);
+            target.putInt(0); // No table entries
+        }
+
+        putId(target, "fmt ");
+        target.putInt(16);
+        target.putShort(isFloat ? FORMAT_IEEE_FLOAT : FORMAT_PCM);
+        target.putShort((short) numChannels);
+        target.putInt(sampleRate);
+        target.putInt(sampleRate * blockAlign); // ByteRate
+        target.putShort((short) blockAlign);
+        target.putShort((short) bitsPerSample);
+
+        putId(target, "data");
+        target.putInt((int) Math.min(dataSize, MAX_32_BIT_SIZE));
+
+        target.flip();
+    }
+
+    public static Info read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(DS64_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        readFully(channel, buffer, 0, 12);
+        String riff = getId(buffer, 0);
+        if (!("RIFF".equals(riff) || "RF64".equals(riff)) || !"WAVE".equals(getId(buffer, 8))) {
+            throw new IOException("Not a WAV file");
+        }
+
+        long ds64DataSize = -1;
+        Info format = null;
+        long position = 12;
+        for (int chunk = 0; chunk < MAX_CHUNKS; chunk++) {
+            readFully(channel, buffer, position, 8);
+            String id = getId(buffer, 0);
+            long size = buffer.getInt(4) & MAX_32_BIT_SIZE;
+            long body = position + 8;
+
+            if ("ds64".equals(id)) {
+                readFully(channel, buffer, body, 16);
+                ds64DataSize = buffer.getLong(8);
+            } else if ("fmt ".equals(id)) {
+                readFully(channel, buffer, body, 16);
+                format = new Info(buffer.getShort(0), buffer.getShort(2), buffer.getInt(4), buffer.getInt(8), buffer.getShort(12), buffer.getShort(14), 0, 0);
+            } else if ("data".equals(id)) {
+                if (format == null) {
+                    throw new IOException("WAV data before fmt");
+                }
+                long dataSize = size == MAX_32_BIT_SIZE && ds64DataSize >= 0 ? ds64DataSize : size;
+                return new Info(format.formatTag(), format.channelCount(), format.sampleRate(), format.byteRate(), format.blockAlign(), format.bitsPerSample(), body, dataSize);
+            }
+
+            // Chunks are padded to an even size
+            position = body + size + (size & 1);
+        }
+
+        throw new IOException("No WAV data chunk");
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated WAV header");
+            }
+        }
+    }
+
+    private static void putId(ByteBuffer target, String id) {
+        for (int i = 0; i < 4; i++) {
+            target.put((byte) id.charAt(i));
+        }
+    }
+
+    private static String getId(ByteBuffer buffer, int offset) {
+        return new String(buffer.array(), offset, 4, StandardCharsets.US_ASCII);
+    }
+}
@@ -5,5 +5,7 @@ public abstract class ErrorMessage {
     public static final String DEVICE_NOT_SUPPORTED = "DEVICE_NOT_SUPPORTED";
     public static final String MISSING_MICROPHONE_PERMISSION = "MISSING_MICROPHONE_PERMISSION";
     public static final String MICROPHONE_IN_USE = "MICROPHONE_IN_USE";
+    public static final String INVALID_ARGUMENT = "INVALID_ARGUMENT";
+    public static final String RECORDING_NOT_FOUND = "RECORDING_NOT_FOUND";
     public static final String UNKNOWN_ERROR = "UNKNOWN_ERROR";
 }
@@ -0,0 +1,33 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface AudioBufferListener {
+    // Samples are 16-bit and interleaved per channel. The array is reused for the next read, copy what has to outlive the call
+    void onAudioBuffer(short[] samples, int length);
+
+    // Fans out to every non-null listener in order, null when there is none so the analysis stage can be skipped
+    static AudioBufferListener combine(AudioBufferListener... listeners) {
+        List<AudioBufferListener> active = new ArrayList<>();
+        for (AudioBufferListener listener : listeners) {
+            if (listener != null) {
+                active.add(listener);
+            }
+        }
+
+        if (active.isEmpty()) {
+            return null;
+        }
+        if (active.size() == 1) {
+            return active.get(0);
+        }
+
+        AudioBufferListener[] targets = active.toArray(new AudioBufferListener[0]);
+        return (samples, length) -> {
+            for (AudioBufferListener target : targets) {
+                target.onAudioBuffer(samples, length);
+            }
+        };
+    }
+}
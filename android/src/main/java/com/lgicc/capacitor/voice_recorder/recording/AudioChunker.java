@@ -0,0 +1,71 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.WavHeader;
+
+import java.nio.ByteBuffer;
+
+// Cuts the capture into fixed-duration chunks of 16-bit little-endian PCM, optionally each with its own WAV header
+public class AudioChunker {
+
+    public static final String FORMAT_PCM = "pcm";
+    public static final String FORMAT_WAV = "wav";
+    public static final int DEFAULT_DURATION_MS = 1000;
+
+    public interface ChunkListener {
+        // The chunk array is reused, only the first length bytes belong to this chunk
+        void onChunk(long sequence, byte[] chunk, int length, long startFrame, int frames, boolean last);
+    }
+
+    private final ChunkListener listener;
+    private final int sampleRate;
+    private final int channelCount;
+    private final int headerSize;
+    private final byte[] chunk;
+    private final ByteBuffer header;
+
+    private int position;
+    private long sequence = 0;
+    private long startFrame = 0;
+
+    public AudioChunker(RecordingConfig config, int durationMs, boolean wav, ChunkListener listener) {
+        this.listener = listener;
+        this.sampleRate = config.sampleRate();
+        this.channelCount = config.channelCount();
+
+        int framesPerChunk = (int) Math.max(1, (long) sampleRate * Math.max(1, durationMs) / 1000);
+        this.headerSize = wav ? WavHeader.SIZE : 0;
+        this.chunk = new byte[headerSize + framesPerChunk * channelCount * 2];
+        // The header is rebuilt in place at the start of the chunk array for every chunk
+        this.header = wav ? ByteBuffer.wrap(chunk, 0, headerSize) : null;
+        this.position = headerSize;
+    }
+
+    public void onAudioBuffer(short[] samples, int length) {
+        for (int i = 0; i < length; i++) {
+            chunk[position++] = (byte) samples[i];
+            chunk[position++] = (byte) (samples[i] >> 8);
+
+            if (position == chunk.length) {
+                emit(false);
+            }
+        }
+    }
+
+    // Emits what is left as the last chunk, called once the capture has stopped
+    public void flush() {
+        emit(true);
+    }
+
+    private void emit(boolean last) {
+        int dataSize = position - headerSize;
+        if (header != null) {
+            WavHeader.write(header, dataSize, sampleRate, channelCount, 16, false, false);
+        }
+
+        int frames = dataSize / (2 * channelCount);
+        listener.onChunk(sequence++, chunk, position, startFrame, frames, last);
+
+        startFrame += frames;
+        position = headerSize;
+    }
+}
@@ -1,148 +1,497 @@
 package com.lgicc.capacitor.voice_recorder.recording;
 
 
-import static com.lgicc.capacitor.voice_recorder.PcmToWavConverter.convertPCMToWAV;
-
-import android.annotation.SuppressLint;
-import android.media.AudioFormat;
 import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.os.Process;
 
+import com.getcapacitor.JSObject;
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
 import com.lgicc.capacitor.voice_recorder.error_messages.ErrorMessage;
 
-import java.io.ByteArrayOutputStream;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
 
+// Owns the microphone. One capture thread reads it and fans every buffer out to all open sessions
 public class CustomAudioRecorder {
 
-    private final int SAMPLE_RATE = 44100; // Sample rate in Hz
-    private final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO; // Mono channel
-    private final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT; // 16-bit PCM format
-    private final int BUFFER_SIZE = 8192;
-
+    public interface CaptureListener {
+        // Called on the capture thread when the microphone is gone for good, the sessions still have to be stopped
+        void onCaptureLost();
+    }
 
-    private final AtomicBoolean isRecording = new AtomicBoolean(false);
-    private final AtomicBoolean isPaused = new AtomicBoolean(false);
     private AudioRecord recorder;
-    private long startedRecordingAt = 0;
+    private Thread recordingThread;
+    private volatile boolean capturing = false;
+    private volatile boolean recorderDied;
+    private RecordingConfig config = RecordingConfig.DEFAULT;
+    // Keeps the capture running without a session, so a recording can start with audio from before it started
+    private volatile PrerollBuffer history;
+
+    // Replaced as a whole on every change, so the capture thread iterates a stable snapshot without locking
+    private volatile RecordingSession[] sessions = new RecordingSession[0];
+    // Counts every hand-off twice, odd while the capture thread offers a read to its snapshot of the sessions
+    private volatile long handoffSequence = 0;
+    // The most recently stopped session, its counters stay readable until the next one stops
+    private volatile RecordingSession lastSession;
+
+    private final File recordingsDirectory;
+    private final RecorderPool pool;
+    private final RecorderMetrics metrics = new RecorderMetrics();
+    private volatile CaptureListener captureListener;
+
+    public CustomAudioRecorder(File recordingsDirectory) {
+        this.recordingsDirectory = recordingsDirectory;
+        this.pool = new RecorderPool(recordingsDirectory);
+    }
 
-    private final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+    public void setCaptureListener(CaptureListener captureListener) {
+        this.captureListener = captureListener;
+    }
+
+    public RecordingConfig getConfig() {
+        return this.config;
+    }
 
     public int getSampleRate() {
-        return this.SAMPLE_RATE;
+        return this.config.sampleRate();
     }
 
     public int getChannelConfig() {
-        return this.CHANNEL_CONFIG;
+        return this.config.getChannelMask();
     }
 
     public int getAudioFormat() {
-        return this.AUDIO_FORMAT;
+        return this.config.encoding();
     }
 
     public boolean getIsRecording() {
-        return this.isRecording.get();
+        return currentRecordingStatus() == CurrentRecordingStatus.RECORDING;
     }
 
     public boolean getIsPaused() {
-        return this.isPaused.get();
+        return currentRecordingStatus() == CurrentRecordingStatus.PAUSED;
     }
 
+    // RECORDING while any session records, PAUSED when all open sessions are paused
     public CurrentRecordingStatus currentRecordingStatus() {
-        if (isRecording.get()) {
-            return CurrentRecordingStatus.RECORDING;
-        } else {
-            if(this.isPaused.get()) {
-                return CurrentRecordingStatus.PAUSED;
+        CurrentRecordingStatus status = CurrentRecordingStatus.NONE;
+        for (RecordingSession session : sessions) {
+            if (session.getStatus() == CurrentRecordingStatus.RECORDING) {
+                return CurrentRecordingStatus.RECORDING;
+            }
+            if (session.getStatus() == CurrentRecordingStatus.PAUSED) {
+                status = CurrentRecordingStatus.PAUSED;
             }
+        }
+        return status;
+    }
 
-            return CurrentRecordingStatus.NONE;
+    // The open session with this id, or the most recently started one for a null id. Null if there is none
+    public RecordingSession getSession(String sessionId) {
+        RecordingSession[] open = sessions;
+        if (sessionId == null) {
+            return open.length > 0 ? open[open.length - 1] : null;
+        }
+
+        for (RecordingSession session : open) {
+            if (session.getId().equals(sessionId)) {
+                return session;
+            }
         }
+        return null;
     }
 
+    public boolean isCapturing() {
+        return recordingThread != null;
+    }
+
+    public boolean isListening() {
+        return history != null;
+    }
+
+    // Like getSession, but falls back to the last stopped session so its counters can still be read
+    public RecordingSession getSessionOrLast(String sessionId) {
+        RecordingSession session = getSession(sessionId);
+        RecordingSession last = lastSession;
+        if (session == null && last != null && (sessionId == null || last.getId().equals(sessionId))) {
+            return last;
+        }
+        return session;
+    }
+
+    public List<String> getSessionIds() {
+        List<String> ids = new ArrayList<>();
+        for (RecordingSession session : sessions) {
+            ids.add(session.getId());
+        }
+        return ids;
+    }
+
+    // Counters of the microphone since the first open session started, or of the last capture once all stopped
+    public RecorderMetrics getMetrics() {
+        return metrics;
+    }
+
+    public JSObject getMetricsSnapshot(String sessionId) {
+        JSObject toReturn = metrics.toJSObject();
+        toReturn.put("overruns", 0);
+        toReturn.put("droppedBuffers", 0);
+        toReturn.put("droppedChunkBuffers", 0);
+        toReturn.put("bufferedBytes", 0);
+        toReturn.put("pipelineHeapBytes", 0);
+        toReturn.put("encodedBytes", 0);
+
+        RecordingSession session = getSessionOrLast(sessionId);
+        if (session != null) {
+            toReturn.put("sessionId", session.getId());
+            session.putCounters(toReturn);
+            session.putPipelineUsage(toReturn);
+        }
 
-    @SuppressLint("MissingPermission")
-    public void startRecording(Function<short[], Void> callback) throws Exception {
-        if (isRecording.get()) {
+        PrerollBuffer listening = history;
+        toReturn.put("prerollHeapBytes", listening != null ? listening.getAllocatedBytes() : 0);
+
+        Runtime runtime = Runtime.getRuntime();
+        toReturn.put("heapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        return toReturn;
+    }
+
+    // Starts a session, and the microphone with it unless it runs already. A session joining a running capture shares
+    // its configuration. checkpointIntervalMs, vad, prerollMs and outputSampleRate are off at 0 or null
+    public synchronized RecordingSession startRecording(String sessionId, RecordingConfig requestedConfig, OutputFormat format, AudioBufferListener listener, AudioBufferListener streamListener,
+                                                        long checkpointIntervalMs, SilenceGate.Settings vad, SilenceGate.Listener vadListener, long prerollMs,
+                                                        int outputSampleRate, PolyphaseResampler.Quality resampleQuality) throws Exception {
+        if (getSession(sessionId) != null) {
             throw new Exception(ErrorMessage.MICROPHONE_IN_USE);
         }
 
-        if (recorder == null) {
-            recorder = new AudioRecord.Builder()
-                    .setAudioSource(MediaRecorder.AudioSource.VOICE_COMMUNICATION)
-                    .setAudioFormat(new AudioFormat.Builder()
-                            .setEncoding(AUDIO_FORMAT)
-                            .setSampleRate(SAMPLE_RATE)
-                            .setChannelMask(CHANNEL_CONFIG)
-                            .build())
-                    .setBufferSizeInBytes(BUFFER_SIZE)
-                    .build();
+        long startRequestedAt = System.nanoTime();
+        boolean startsCapture = recordingThread == null;
+        if (startsCapture) {
+            RecordingConfig supportedConfig = requestedConfig.resolveSupported();
+            if (supportedConfig == null) {
+                throw new Exception(ErrorMessage.DEVICE_NOT_SUPPORTED);
+            }
+            config = supportedConfig;
+            recorder = pool.acquireRecorder(config);
+        }
+
+        RecordingSession session;
+        try {
+            session = createSession(sessionId, format, listener, streamListener, checkpointIntervalMs, vad, vadListener, prerollMs, outputSampleRate, resampleQuality);
+        } catch (IOException | RuntimeException exp) {
+            if (startsCapture) {
+                pool.recycle(config, recorder);
+                recorder = null;
+            }
+            throw exp;
+        }
+
+        session.start();
+        RecordingSession[] open = Arrays.copyOf(sessions, sessions.length + 1);
+        open[open.length - 1] = session;
+        sessions = open;
+
+        if (startsCapture) {
+            metrics.reset();
+            metrics.markStarted(startRequestedAt);
+            try {
+                startCapture();
+            } catch (RuntimeException exp) {
+                // The microphone never ran, undo the start so the next one doesn't join a capture that doesn't exist
+                sessions = new RecordingSession[0];
+                session.discard();
+                if (recorder.getState() == AudioRecord.STATE_INITIALIZED) {
+                    pool.recycle(config, recorder);
+                } else {
+                    recorder.release();
+                }
+                recorder = null;
+                throw new Exception(ErrorMessage.DEVICE_NOT_SUPPORTED, exp);
+            }
+        }
+        return session;
+    }
+
+    private RecordingSession createSession(String sessionId, OutputFormat format, AudioBufferListener listener, AudioBufferListener streamListener,
+                                           long checkpointIntervalMs, SilenceGate.Settings vad, SilenceGate.Listener vadListener, long prerollMs,
+                                           int outputSampleRate, PolyphaseResampler.Quality resampleQuality) throws IOException {
+        PolyphaseResampler resampler = null;
+        RecordingConfig sessionConfig = config;
+        if (outputSampleRate > 0 && outputSampleRate != config.sampleRate()) {
+            resampler = new PolyphaseResampler(config.sampleRate(), outputSampleRate, config.channelCount(), resampleQuality);
+            sessionConfig = config.withSampleRate(outputSampleRate);
         }
 
-        isRecording.set(true);
+        RecorderPool.PreparedEncoder prepared = pool.acquireEncoder(sessionConfig, format);
+        File file;
+        AudioEncoder encoder;
+        if (prepared != null) {
+            file = prepared.file();
+            encoder = prepared.encoder();
+        } else {
+            if (!recordingsDirectory.exists() && !recordingsDirectory.mkdirs()) {
+                throw new IOException("Could not create " + recordingsDirectory);
+            }
 
-        Thread recordingThread = new Thread(() -> {
-            byte[] buffer = new byte[BUFFER_SIZE];
+            file = File.createTempFile("recording_", format.getFileExtension(), recordingsDirectory);
+            try {
+                encoder = format.createEncoder(file, sessionConfig.sampleRate(), sessionConfig.channelCount(), sessionConfig.isFloat());
+            } catch (IOException | RuntimeException exp) {
+                file.delete();
+                throw exp;
+            }
+        }
 
-            while (isRecording.get()) {
-                int bytesRead = recorder.read(buffer, 0, buffer.length);
-                if (bytesRead > 0) {
-                    recording.write(buffer, 0, bytesRead);
+        File journal = null;
+        if (checkpointIntervalMs > 0) {
+            try {
+                JournaledEncoder journaled = new JournaledEncoder(encoder, file, format, sessionConfig, checkpointIntervalMs);
+                journal = journaled.getJournalFile();
+                encoder = journaled;
+            } catch (IOException exp) {
+                encoder.discard();
+                throw exp;
+            }
+        }
 
-                    short[] shortBuffer = new short[bytesRead / 2];
+        // Behind the gate so the peaks line up with the file. The journal doesn't cover them, a recovered WAV is rescanned
+        WaveformIndex waveform = new WaveformIndex(sessionConfig.sampleRate(), sessionConfig.channelCount());
+        encoder = new WaveformEncoder(encoder, waveform);
+
+        // The journal only ever sees what the gate lets through, so a recovered recording is trimmed as well
+        SilenceGate silenceGate = vad != null ? new SilenceGate(encoder, sessionConfig, vad, vadListener) : null;
+        if (silenceGate != null) {
+            silenceGate.setTransformTimer(metrics.getFftLatency());
+            encoder = silenceGate;
+        }
+
+        return new RecordingSession(sessionId, sessionConfig, encoder, silenceGate, journal, waveform, listener, streamListener, metrics, prerollMs, resampler);
+    }
+
+    private void startCapture() {
+        RecordingConfig captureConfig = config;
+        AudioRecord captureRecorder = recorder;
+        recorderDied = false;
+        capturing = true;
+
+        // The capture thread only reads and hands off, encoding and analysis run on the stages of each session
+        recordingThread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+            short[] buffer = new short[captureConfig.getSamplesPerRead()];
+            float[] floatBuffer = captureConfig.isFloat() ? new float[buffer.length] : null;
+
+            while (capturing) {
+                long readStartedAt = System.nanoTime();
+                int samplesRead;
+                if (floatBuffer != null) {
+                    samplesRead = captureRecorder.read(floatBuffer, 0, floatBuffer.length, AudioRecord.READ_BLOCKING);
+                } else {
+                    samplesRead = captureRecorder.read(buffer, 0, buffer.length);
+                }
+                metrics.onRead(samplesRead, System.nanoTime() - readStartedAt);
 
-                    for (int i = 0; i < shortBuffer.length; i++) {
-                        shortBuffer[i] = (short) ((buffer[2 * i] & 0xFF) | (buffer[2 * i + 1] << 8));
+                // A dead AudioRecord never recovers, the audio up to here is still finished by stopRecording
+                if (samplesRead == AudioRecord.ERROR_DEAD_OBJECT) {
+                    recorderDied = true;
+                    for (RecordingSession session : sessions) {
+                        session.endCapture();
                     }
+                    CaptureListener listener = captureListener;
+                    if (listener != null) {
+                        listener.onCaptureLost();
+                    }
+                    break;
+                }
 
-                    callback.apply(shortBuffer);
+                // Paused sessions throw their reads away, so resuming takes effect with the next read
+                if (samplesRead > 0) {
+                    long handoffStartedAt = System.nanoTime();
+                    if (floatBuffer != null) {
+                        SampleConverter.toPcm16(floatBuffer, buffer, samplesRead);
+                    }
+                    // New sessions copy their preroll before the history takes this read
+                    PrerollBuffer preroll = history;
+                    handoffSequence++;
+                    try {
+                        for (RecordingSession session : sessions) {
+                            session.offer(buffer, floatBuffer, samplesRead, preroll);
+                        }
+                    } finally {
+                        handoffSequence++;
+                    }
+                    if (preroll != null) {
+                        preroll.write(buffer, floatBuffer, samplesRead);
+                    }
+                    metrics.getHandoffLatency().recordSince(handoffStartedAt);
                 }
             }
-        });
-
-        recorder.startRecording();
-        startedRecordingAt = System.currentTimeMillis();
+        }, "voice-recorder-capture");
+
+        try {
+            recorder.startRecording();
+        } catch (RuntimeException exp) {
+            capturing = false;
+            recordingThread = null;
+            throw exp;
+        }
         recordingThread.start();
     }
 
-    public RecordingResult stopRecording() throws Exception {
-        if (!isRecording.get()) {
+    // Runs the capture without recording and keeps the last historyMs of it, the memory is allocated once up front.
+    // While recording already, the history starts with the next read
+    public synchronized RecordingConfig startListening(RecordingConfig requestedConfig, long historyMs) throws Exception {
+        if (history != null) {
+            throw new Exception(ErrorMessage.MICROPHONE_IN_USE);
+        }
+
+        long startRequestedAt = System.nanoTime();
+        boolean startsCapture = recordingThread == null;
+        if (startsCapture) {
+            RecordingConfig supportedConfig = requestedConfig.resolveSupported();
+            if (supportedConfig == null) {
+                throw new Exception(ErrorMessage.DEVICE_NOT_SUPPORTED);
+            }
+            config = supportedConfig;
+            recorder = pool.acquireRecorder(config);
+        }
+
+        history = new PrerollBuffer(config, historyMs, config.isFloat());
+        if (startsCapture) {
+            metrics.reset();
+            metrics.markStarted(startRequestedAt);
+            startCapture();
+        }
+        return config;
+    }
+
+    // Drops the history, the microphone stops unless a session still records
+    public synchronized void stopListening() throws Exception {
+        if (history == null) {
             throw new Exception(ErrorMessage.NOT_RECORDING);
         }
 
-        recorder.stop();
-        isRecording.set(false);
+        history = null;
+        if (sessions.length == 0) {
+            stopCapture();
+        }
+    }
 
-        long durationMs = System.currentTimeMillis() - startedRecordingAt;
-        int dataSize = recording.size();
+    // Builds the AudioRecord, and the encoder when a format is given, ahead of the next startRecording. They are kept
+    // across takes until releasePrepared or until nothing was recorded for idleTimeoutMs, 0 keeps them indefinitely
+    public synchronized RecordingConfig prepare(RecordingConfig requestedConfig, OutputFormat format, long idleTimeoutMs) throws Exception {
+        if (recordingThread != null) {
+            throw new Exception(ErrorMessage.MICROPHONE_IN_USE);
+        }
 
-        byte[] wavData = convertPCMToWAV(recording.toByteArray(), SAMPLE_RATE, 1);
+        RecordingConfig supportedConfig = requestedConfig.resolveSupported();
+        if (supportedConfig == null) {
+            throw new Exception(ErrorMessage.DEVICE_NOT_SUPPORTED);
+        }
 
-        RecordingResult result = new RecordingResult(wavData, durationMs, dataSize);
+        pool.prepare(supportedConfig, format, idleTimeoutMs);
+        return supportedConfig;
+    }
 
-        recorder.release();
-        recorder = null;
-        recording.reset();
+    // Only creates the encoder of the next take, which needs no permission. Released after idleTimeoutMs unless used
+    public synchronized void prepareEncoder(RecordingConfig requestedConfig, OutputFormat format, long idleTimeoutMs) throws Exception {
+        if (recordingThread != null) {
+            throw new Exception(ErrorMessage.MICROPHONE_IN_USE);
+        }
 
-        return result;
+        RecordingConfig supportedConfig = requestedConfig.resolveSupported();
+        if (supportedConfig == null) {
+            throw new Exception(ErrorMessage.DEVICE_NOT_SUPPORTED);
+        }
+
+        pool.prepareEncoder(supportedConfig, format, idleTimeoutMs);
+    }
+
+    // Gives up the prepared AudioRecord and encoder, a running recording is not affected
+    public void releasePrepared() {
+        pool.releaseIdle();
     }
 
-    public void pauseRecording() throws Exception {
-        if (!isRecording.get()) {
+    // Stops the session with this id, the most recent one for null. The microphone stops with the last session unless listening
+    public synchronized RecordingResult stopRecording(String sessionId) throws Exception {
+        RecordingSession session = getSession(sessionId);
+        if (session == null) {
             throw new Exception(ErrorMessage.NOT_RECORDING);
         }
 
+        List<RecordingSession> open = new ArrayList<>(Arrays.asList(sessions));
+        open.remove(session);
+        sessions = open.toArray(new RecordingSession[0]);
+        lastSession = session;
+
+        if (open.isEmpty() && history == null) {
+            stopCapture();
+        } else {
+            // The capture keeps running for the others, nothing may be offered to the session once its stages are closed
+            awaitHandoff();
+        }
+
+        return session.finish();
+    }
+
+    // A hand-off in progress may still use the snapshot from before the last change of the sessions, later ones can't
+    private void awaitHandoff() {
+        long sequence = handoffSequence;
+        if (sequence % 2 == 0) {
+            return;
+        }
+        while (handoffSequence == sequence && capturing) {
+            Thread.yield();
+        }
+    }
+
+    private void stopCapture() throws InterruptedException {
+        capturing = false;
+        // Let the capture thread hand off its last read before the stages are closed
+        recordingThread.join();
+        recordingThread = null;
         recorder.stop();
-        isRecording.set(false);
+
+        // A dead AudioRecord can't be started again, the pool builds a new one for the next take
+        if (recorderDied) {
+            recorder.release();
+        } else {
+            pool.recycle(config, recorder);
+        }
+        recorder = null;
     }
 
-    public void resumeRecording() throws Exception {
-        if (isRecording.get()) {
-            throw new Exception(ErrorMessage.MICROPHONE_IN_USE);
+    // Recordings of a previous process that was killed before stopRecording, finalised as WAV
+    public List<RecordingResult> recoverRecordings() {
+        Set<File> activeJournals = new HashSet<>();
+        for (RecordingSession session : sessions) {
+            if (session.getJournalFile() != null) {
+                activeJournals.add(session.getJournalFile());
+            }
         }
+        return RecordingJournal.recoverAll(recordingsDirectory, activeJournals);
+    }
 
-        recorder.startRecording();
-        isRecording.set(true);
+    public void pauseRecording(String sessionId) throws Exception {
+        RecordingSession session = getSession(sessionId);
+        if (session == null) {
+            throw new Exception(ErrorMessage.NOT_RECORDING);
+        }
+        session.pause();
+    }
+
+    public void resumeRecording(String sessionId) throws Exception {
+        RecordingSession session = getSession(sessionId);
+        if (session == null) {
+            throw new Exception(ErrorMessage.NOT_RECORDING);
+        }
+        session.resume();
     }
 }
@@ -0,0 +1,12 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+// Takes measured durations, free of Capacitor types so the DSP classes also build for the JVM benchmarks
+public interface DurationRecorder {
+
+    void record(long nanos);
+
+    // Times from startNanos, as taken from System.nanoTime, to now
+    default void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+}
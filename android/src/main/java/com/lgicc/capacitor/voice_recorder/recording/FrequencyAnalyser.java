@@ -1,65 +1,229 @@
 package com.lgicc.capacitor.voice_recorder.recording;
 import org.jtransforms.fft.DoubleFFT_1D;
+import org.jtransforms.fft.FloatFFT_1D;
 
 public class FrequencyAnalyser {
 
+    public static final int DEFAULT_FRAME_SIZE = 4096;
+
+    public interface SpectrumListener {
+        // The magnitudes array is reused for the next frame
+        void onSpectrum(int[] magnitudes);
+    }
+
+    public interface PowerSpectrumListener {
+        // Linear power per bin, the array is reused for the next frame
+        void onPowerSpectrum(double[] power);
+    }
+
+    private final int analysisFrameSize;
+    private final int windowSize;
+    private final int hopSize;
+    private final boolean floatPrecision;
+
+    // Sliding window of the most recent mono samples for the streaming analysis
+    private final double[] history;
+    private final double[] historyWindow;
+    private int historyPosition = 0;
+    private long historyFill = 0;
+    private int samplesSinceFrame = 0;
+
+    // Scratch buffers and the FFT plan are sized on the first call and reused while the frame size stays the same
+    private int frameCount = -1;
     private double[] hannWindow;
+    private double[] fftData;
+    private float[] floatFftData;
+    private double[] logMagnitudes;
+    private int[] normalizedMagnitudes;
+    private double[] power;
+    private DoubleFFT_1D fft;
+    private FloatFFT_1D floatFft;
+    private int[] bandEdges;
+    private int[] bands;
+    private DurationRecorder transformTimer;
+    private double scale = 0;
+
+    public FrequencyAnalyser() {
+        this(DEFAULT_FRAME_SIZE, DEFAULT_FRAME_SIZE, false);
+    }
+
+    // frameSize should be a power of two, other sizes make the FFT allocate on every transform
+    public FrequencyAnalyser(int frameSize, int hopSize, boolean floatPrecision) {
+        this(frameSize, frameSize, hopSize, floatPrecision);
+    }
+
+    // The streaming frames window the latest windowSize samples and zero pad them to the frameSize of the FFT
+    public FrequencyAnalyser(int frameSize, int windowSize, int hopSize, boolean floatPrecision) {
+        this.analysisFrameSize = frameSize;
+        this.windowSize = Math.max(1, Math.min(windowSize, frameSize));
+        this.hopSize = Math.max(1, hopSize);
+        this.floatPrecision = floatPrecision;
+        this.history = new double[this.windowSize];
+        this.historyWindow = generateHannWindow(this.windowSize);
+    }
 
     public int[] toFrequencies(short[] buffer) {
-        int frameCount = buffer.length;
+        return toFrequencies(buffer, buffer.length);
+    }
+
+    // The returned array is reused by the next call
+    public int[] toFrequencies(short[] buffer, int length) {
+        return toFrequencies(buffer, length, 1);
+    }
+
+    // Analyses exactly the given buffer, independent of the streaming frames
+    public int[] toFrequencies(short[] buffer, int length, int channelCount) {
+        applyWindow(buffer, length, channelCount);
+        return computeMagnitudes();
+    }
+
+    // Linear power per bin without the per frame normalization, for comparing energy between parts of the spectrum.
+    // The returned array is reused by the next call
+    public double[] toPowerSpectrum(short[] buffer, int length, int channelCount) {
+        applyWindow(buffer, length, channelCount);
+        return computePower();
+    }
 
-        // Initialize the Hann window
-        if (hannWindow == null || hannWindow.length != frameCount) {
-            hannWindow = generateHannWindow(frameCount);
+    private void applyWindow(short[] buffer, int length, int channelCount) {
+        if (frameCount != length / channelCount) {
+            prepare(length / channelCount);
         }
 
-        // Normalize the input buffer to the range [-1.0, 1.0]
-        double[] normalizedBuffer = new double[frameCount];
+        // Normalize 16-bit signed PCM to [-1.0, 1.0] and apply the Hann window
         for (int i = 0; i < frameCount; i++) {
-            normalizedBuffer[i] = buffer[i] / 32768.0;  // Normalize 16-bit signed PCM to [-1.0, 1.0]
+            int sample = buffer[i * channelCount];
+            for (int c = 1; c < channelCount; c++) {
+                sample += buffer[i * channelCount + c];
+            }
+
+            setWindowedSample(i, (sample / (32768.0 * channelCount)) * hannWindow[i]);
         }
+    }
 
-        // Apply the Hann window
-        double[] windowedData = new double[frameCount];
-        for (int i = 0; i < frameCount; i++) {
-            windowedData[i] = normalizedBuffer[i] * hannWindow[i];
+    // Feeds samples of any read size, the listener gets one spectrum per hop once a full frame has been seen
+    public void analyse(short[] buffer, int length, int channelCount, SpectrumListener listener) {
+        for (int i = 0; i + channelCount <= length; i += channelCount) {
+            if (push(buffer, i, channelCount)) {
+                windowHistory();
+                listener.onSpectrum(computeMagnitudes());
+            }
         }
+    }
 
-        // Convert the real values to complex format
-        double[] fftData = new double[frameCount * 2];
-        for (int i = 0; i < frameCount; i++) {
-            fftData[2 * i] = windowedData[i];  // Real part
-            fftData[2 * i + 1] = 0;  // Imaginary part
+    // Same streaming frames as analyse, reported as the linear power of frameSize / 2 bins
+    public void analysePower(short[] buffer, int length, int channelCount, PowerSpectrumListener listener) {
+        for (int i = 0; i + channelCount <= length; i += channelCount) {
+            if (push(buffer, i, channelCount)) {
+                windowHistory();
+                listener.onPowerSpectrum(computePower());
+            }
+        }
+    }
+
+    // Adds the frame starting at offset to the history, true when a spectrum is due
+    private boolean push(short[] buffer, int offset, int channelCount) {
+        int sample = buffer[offset];
+        for (int c = 1; c < channelCount; c++) {
+            sample += buffer[offset + c];
+        }
+
+        history[historyPosition] = sample / (32768.0 * channelCount);
+        historyPosition = (historyPosition + 1) % windowSize;
+        historyFill++;
+
+        if (++samplesSinceFrame >= hopSize && historyFill >= windowSize) {
+            samplesSinceFrame = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // Samples per channel fed to analyse so far, inside a SpectrumListener the end of the frame being reported
+    public long getPosition() {
+        return historyFill;
+    }
+
+    // The log10 magnitude a 255 of the last spectrum stands for, the spectra are normalized per frame
+    public double getScale() {
+        return scale;
+    }
+
+    // Times every FFT, null turns it off
+    public void setTransformTimer(DurationRecorder transformTimer) {
+        this.transformTimer = transformTimer;
+    }
+
+    public void reset() {
+        historyPosition = 0;
+        historyFill = 0;
+        samplesSinceFrame = 0;
+    }
+
+    private void windowHistory() {
+        if (frameCount != analysisFrameSize) {
+            prepare(analysisFrameSize);
+        }
+
+        // The oldest sample sits at the write position of the ring
+        for (int i = 0; i < windowSize; i++) {
+            setWindowedSample(i, history[(historyPosition + i) % windowSize] * historyWindow[i]);
         }
+        for (int i = windowSize; i < frameCount; i++) {
+            setWindowedSample(i, 0);
+        }
+    }
 
-        // Perform the FFT
-        DoubleFFT_1D fft = new DoubleFFT_1D(frameCount);
-        fft.complexForward(fftData);
+    private void setWindowedSample(int index, double value) {
+        if (floatPrecision) {
+            floatFftData[index] = (float) value;
+        } else {
+            fftData[index] = value;
+        }
+    }
 
-        // Calculate magnitudes
-        double[] magnitudes = new double[frameCount / 2];
-        for (int i = 0; i < magnitudes.length; i++) {
-            double re = fftData[2 * i];
-            double im = fftData[2 * i + 1];
-            magnitudes[i] = Math.sqrt(re * re + im * im);
+    // Real input FFT, packed as [Re0, Re(n/2), Re1, Im1, Re2, Im2, ...]
+    private void transform() {
+        long startedAt = transformTimer != null ? System.nanoTime() : 0;
+        if (floatPrecision) {
+            floatFft.realForward(floatFftData);
+        } else {
+            fft.realForward(fftData);
+        }
+        if (transformTimer != null) {
+            transformTimer.recordSince(startedAt);
         }
+    }
+
+    private double[] computePower() {
+        transform();
 
-        // Logarithmic scaling for magnitudes (avoids high-frequency spikes)
-        double[] logMagnitudes = new double[magnitudes.length];
-        for (int i = 0; i < magnitudes.length; i++) {
-            logMagnitudes[i] = Math.log10(magnitudes[i] + 1e-7);  // Add small epsilon to avoid log(0)
+        for (int i = 0; i < power.length; i++) {
+            double re = floatPrecision ? floatFftData[2 * i] : fftData[2 * i];
+            double im = i == 0 ? 0 : floatPrecision ? floatFftData[2 * i + 1] : fftData[2 * i + 1];
+            power[i] = re * re + im * im;
         }
 
-        // Find the maximum log magnitude
+        return power;
+    }
+
+    private int[] computeMagnitudes() {
+        transform();
+
+        // Calculate magnitudes with logarithmic scaling (avoids high-frequency spikes)
         double maxLogMagnitude = 0;
-        for (double logMagnitude : logMagnitudes) {
+        for (int i = 0; i < logMagnitudes.length; i++) {
+            double re = floatPrecision ? floatFftData[2 * i] : fftData[2 * i];
+            double im = i == 0 ? 0 : floatPrecision ? floatFftData[2 * i + 1] : fftData[2 * i + 1];
+            double logMagnitude = Math.log10(Math.sqrt(re * re + im * im) + 1e-7);  // Add small epsilon to avoid log(0)
+            logMagnitudes[i] = logMagnitude;
+
             if (logMagnitude > maxLogMagnitude) {
                 maxLogMagnitude = logMagnitude;
             }
         }
 
+        scale = maxLogMagnitude;
         // Normalize the magnitudes to [0, 255]
-        int[] normalizedMagnitudes = new int[logMagnitudes.length];
         for (int i = 0; i < logMagnitudes.length; i++) {
             double normalizedValue = (logMagnitudes[i] / maxLogMagnitude) * 255;
             normalizedMagnitudes[i] = (int) Math.min(255, Math.max(0, normalizedValue));
@@ -68,6 +232,59 @@ public class FrequencyAnalyser {
         return normalizedMagnitudes;
     }
 
+    // Aggregates the spectrum into logarithmically spaced bands, each band carries the loudest bin it covers
+    public int[] toFrequencyBands(short[] buffer, int length, int channelCount, int bandCount) {
+        return toBands(toFrequencies(buffer, length, channelCount), bandCount);
+    }
+
+    public int[] toBands(int[] magnitudes, int bandCount) {
+        bandCount = Math.min(bandCount, magnitudes.length);
+
+        if (bands == null || bands.length != bandCount || bandEdges[bandCount] != magnitudes.length) {
+            bandEdges = generateLogBandEdges(magnitudes.length, bandCount);
+            bands = new int[bandCount];
+        }
+
+        for (int band = 0; band < bandCount; band++) {
+            int loudest = 0;
+            for (int bin = bandEdges[band]; bin < bandEdges[band + 1]; bin++) {
+                loudest = Math.max(loudest, magnitudes[bin]);
+            }
+            bands[band] = loudest;
+        }
+
+        return bands;
+    }
+
+    private void prepare(int frameCount) {
+        this.frameCount = frameCount;
+        hannWindow = generateHannWindow(frameCount);
+        logMagnitudes = new double[frameCount / 2];
+        normalizedMagnitudes = new int[frameCount / 2];
+        power = new double[frameCount / 2];
+
+        if (floatPrecision) {
+            floatFftData = new float[frameCount];
+            floatFft = new FloatFFT_1D(frameCount);
+        } else {
+            fftData = new double[frameCount];
+            fft = new DoubleFFT_1D(frameCount);
+        }
+    }
+
+    static int[] generateLogBandEdges(int binCount, int bandCount) {
+        int[] edges = new int[bandCount + 1];
+        edges[bandCount] = binCount;
+
+        for (int band = 1; band < bandCount; band++) {
+            int edge = (int) Math.floor(Math.pow(binCount, (double) band / bandCount));
+            // Every band covers at least one bin and leaves at least one for each band above it
+            edges[band] = Math.min(Math.max(edge, edges[band - 1] + 1), binCount - (bandCount - band));
+        }
+
+        return edges;
+    }
+
     private static double[] generateHannWindow(int size) {
         double[] window = new double[size];
         for (int i = 0; i < size; i++) {
@@ -0,0 +1,80 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+public class FrequencyDataThrottle {
+
+    public interface BatchListener {
+        // The batch array is reused, only the first length bytes belong to this event
+        void onBatch(byte[] batch, int length, int bins, int frames);
+    }
+
+    private static final int MIN_FRAME_SIZE = 64;
+
+    private final FrequencyAnalyser analyser;
+    private final BatchListener listener;
+    private final FrequencyAnalyser.SpectrumListener collector = this::collect;
+    private final int channelCount;
+    private final int sampleRate;
+    private final int hopSize;
+    private final int binCount;
+    private final int framesPerEvent;
+    private final byte[] batch;
+    private SpectrumFrameEncoder frameEncoder;
+
+    private int bufferedFrames = 0;
+    private int frameBins = 0;
+
+    // eventsPerSecond <= 0 analyses back to back frames, binCount <= 0 keeps the full spectrum
+    public FrequencyDataThrottle(RecordingConfig config, double eventsPerSecond, int binCount, int framesPerEvent, int frameSize, boolean floatPrecision, BatchListener listener) {
+        this.listener = listener;
+        this.channelCount = config.channelCount();
+        this.sampleRate = config.sampleRate();
+        this.binCount = binCount;
+        this.framesPerEvent = Math.max(1, framesPerEvent);
+        frameSize = Integer.highestOneBit(Math.max(MIN_FRAME_SIZE, frameSize));
+
+        // Frames overlap when more are needed per second than fit back to back, so only due frames ever reach the FFT
+        this.hopSize = eventsPerSecond > 0 ? (int) Math.max(1, Math.round(config.sampleRate() / (eventsPerSecond * this.framesPerEvent))) : frameSize;
+        this.analyser = new FrequencyAnalyser(frameSize, hopSize, floatPrecision);
+        this.batch = new byte[this.framesPerEvent * (binCount > 0 ? Math.min(binCount, frameSize / 2) : frameSize / 2)];
+    }
+
+    // Sends SpectrumFrameEncoder packets instead of the plain bytes, with a header, the scale and optional deltas
+    public void useFrameFormat(int bitsPerBin, boolean delta) {
+        frameEncoder = new SpectrumFrameEncoder(batch.length / framesPerEvent, framesPerEvent, bitsPerBin, delta);
+    }
+
+    public void setTransformTimer(LatencyHistogram transformTimer) {
+        analyser.setTransformTimer(transformTimer);
+    }
+
+    public void onAudioBuffer(short[] samples, int length) {
+        analyser.analyse(samples, length, channelCount, collector);
+    }
+
+    private void collect(int[] magnitudes) {
+        int[] frame = binCount > 0 ? analyser.toBands(magnitudes, binCount) : magnitudes;
+        frameBins = frame.length;
+
+        if (frameEncoder != null) {
+            if (bufferedFrames == 0) {
+                frameEncoder.begin(analyser.getPosition() * 1000.0 / sampleRate, hopSize * 1000.0 / sampleRate);
+            }
+            frameEncoder.addFrame(frame, analyser.getScale());
+            if (++bufferedFrames == framesPerEvent) {
+                listener.onBatch(frameEncoder.getBuffer(), frameEncoder.finish(), frameBins, bufferedFrames);
+                bufferedFrames = 0;
+            }
+            return;
+        }
+
+        int offset = bufferedFrames * frameBins;
+        for (int i = 0; i < frameBins; i++) {
+            batch[offset + i] = (byte) frame[i];
+        }
+
+        if (++bufferedFrames == framesPerEvent) {
+            listener.onBatch(batch, bufferedFrames * frameBins, frameBins, bufferedFrames);
+            bufferedFrames = 0;
+        }
+    }
+}
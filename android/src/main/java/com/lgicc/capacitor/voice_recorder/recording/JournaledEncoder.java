@@ -0,0 +1,102 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
+import com.lgicc.capacitor.voice_recorder.encoding.WavFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+
+// Wraps the encoder of a recording so a killed process leaves audio behind that the next launch can finalise
+class JournaledEncoder implements AudioEncoder {
+
+    private final AudioEncoder encoder;
+    // The WAV recording itself, or a PCM copy next to encoded formats whose containers can't be salvaged
+    private final WavFileWriter pcm;
+    private final RecordingJournal journal;
+    private final long checkpointIntervalMs;
+    private long lastCheckpointAt;
+
+    JournaledEncoder(AudioEncoder encoder, File recording, OutputFormat format, RecordingConfig config, long checkpointIntervalMs) throws IOException {
+        this.encoder = encoder;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+
+        WavFileWriter pcm = null;
+        try {
+            pcm = encoder instanceof WavFileWriter
+                    ? (WavFileWriter) encoder
+                    : new WavFileWriter(File.createTempFile("recording_", ".wav", recording.getParentFile()), config.sampleRate(), config.channelCount());
+            this.pcm = pcm;
+            this.journal = new RecordingJournal(recording, pcm.getFile(), format);
+        } catch (IOException exp) {
+            if (pcm != null && pcm != encoder) {
+                pcm.discard();
+            }
+            throw exp;
+        }
+        this.lastCheckpointAt = System.currentTimeMillis();
+    }
+
+    File getJournalFile() {
+        return journal.getFile();
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        encoder.encode(samples, length);
+        if (pcm != encoder) {
+            pcm.encode(samples, length);
+        }
+        checkpointIfDue();
+    }
+
+    @Override
+    public boolean acceptsFloat() {
+        return encoder.acceptsFloat();
+    }
+
+    // Only a float WAV recording accepts floats, and then it is its own journal
+    @Override
+    public void encode(float[] samples, int length) throws IOException {
+        encoder.encode(samples, length);
+        checkpointIfDue();
+    }
+
+    private void checkpointIfDue() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointAt >= checkpointIntervalMs) {
+            pcm.checkpoint();
+            journal.checkpoint(pcm.getDataSize());
+            lastCheckpointAt = now;
+        }
+    }
+
+    @Override
+    public File finish() throws IOException {
+        File file = encoder.finish();
+        if (pcm != encoder) {
+            pcm.discard();
+        }
+        journal.delete();
+        return file;
+    }
+
+    @Override
+    public void discard() {
+        encoder.discard();
+        if (pcm != encoder) {
+            pcm.discard();
+        }
+        journal.delete();
+    }
+
+    @Override
+    public String getMimeType() {
+        return encoder.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return encoder.getEncodedSize();
+    }
+}
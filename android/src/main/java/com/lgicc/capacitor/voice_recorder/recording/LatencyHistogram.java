@@ -0,0 +1,83 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Durations in power of two microsecond buckets. Recording is a handful of uncontended atomic adds, cheap enough for every buffer
+public class LatencyHistogram implements DurationRecorder {
+
+    // Bucket i counts durations below 2^i microseconds, the last one everything longer than about 8 seconds
+    private static final int BUCKETS = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    @Override
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    // Upper bound of the bucket the quantile falls into, 0 without samples
+    long getQuantileMicros(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    // Updates racing the snapshot may show up in some fields and not yet in others
+    public JSObject toJSObject() {
+        long samples = count.get();
+        JSObject toReturn = new JSObject();
+        toReturn.put("count", samples);
+        toReturn.put("meanUs", samples > 0 ? totalNanos.get() / 1000.0 / samples : 0);
+        toReturn.put("maxUs", maxNanos.get() / 1000.0);
+        toReturn.put("p50Us", getQuantileMicros(0.5));
+        toReturn.put("p90Us", getQuantileMicros(0.9));
+        toReturn.put("p99Us", getQuantileMicros(0.99));
+
+        JSArray counts = new JSArray();
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.put(buckets.get(i));
+        }
+        toReturn.put("buckets", counts);
+        return toReturn;
+    }
+}
@@ -0,0 +1,66 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+// Time domain level of fixed windows, a single pass over the samples without any FFT
+public class LevelMeter {
+
+    public static final double DEFAULT_EVENTS_PER_SECOND = 20;
+
+    // Floor for silence, JSON has no -Infinity
+    public static final double MIN_DBFS = -100;
+
+    // A 16-bit sample at either rail, float captures are clamped to the same range before they get here
+    private static final int CLIP_LEVEL = Short.MAX_VALUE;
+
+    public interface LevelListener {
+        // rms and peak are relative to full scale, 0.0 to 1.0
+        void onLevel(double rms, double peak, int clippedSamples);
+    }
+
+    private final LevelListener listener;
+    private final int samplesPerWindow;
+
+    private long sumOfSquares = 0;
+    private int peak = 0;
+    private int clippedSamples = 0;
+    private int windowSamples = 0;
+
+    public LevelMeter(RecordingConfig config, double eventsPerSecond, LevelListener listener) {
+        this.listener = listener;
+        double rate = eventsPerSecond > 0 ? eventsPerSecond : DEFAULT_EVENTS_PER_SECOND;
+        // Whole frames only, so every window covers all channels equally
+        this.samplesPerWindow = (int) Math.max(1, Math.round(config.sampleRate() / rate)) * config.channelCount();
+    }
+
+    public void onAudioBuffer(short[] samples, int length) {
+        for (int i = 0; i < length; i++) {
+            int sample = samples[i];
+            int magnitude = sample < 0 ? -sample : sample;
+
+            sumOfSquares += (long) sample * sample;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+            if (magnitude >= CLIP_LEVEL) {
+                clippedSamples++;
+            }
+
+            if (++windowSamples == samplesPerWindow) {
+                emit();
+            }
+        }
+    }
+
+    private void emit() {
+        double rms = Math.sqrt((double) sumOfSquares / windowSamples) / 32768.0;
+        listener.onLevel(rms, Math.min(1.0, peak / 32768.0), clippedSamples);
+
+        sumOfSquares = 0;
+        peak = 0;
+        clippedSamples = 0;
+        windowSamples = 0;
+    }
+
+    public static double toDbfs(double level) {
+        return level > 0 ? Math.max(MIN_DBFS, 20 * Math.log10(level)) : MIN_DBFS;
+    }
+}
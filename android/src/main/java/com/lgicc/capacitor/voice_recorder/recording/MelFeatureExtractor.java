@@ -0,0 +1,189 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Log-mel energies or MFCCs of short overlapping windows, the input features of most keyword and speech models.
+// The power spectrum comes from the streaming FrequencyAnalyser, the triangular mel filters are stored sparse as the
+// bins each one covers. Events carry framesPerEvent frames of little endian float32 values, all buffers are allocated
+// in the constructor
+public class MelFeatureExtractor {
+
+    public enum Type {
+        LOG_MEL,
+        // DCT-II of the log-mel energies, orthonormal
+        MFCC;
+
+        public static Type fromString(String type) {
+            return "mfcc".equals(type) ? MFCC : LOG_MEL;
+        }
+    }
+
+    public interface FeatureListener {
+        // The batch array is reused, startMs is the capture position where the window of the first frame begins
+        void onFeatures(byte[] batch, int length, int frames, int valuesPerFrame, double startMs);
+    }
+
+    // maxHz <= 0 goes up to the Nyquist frequency, coefficients is only used for MFCC
+    public record Settings(Type type, int melBands, int coefficients, double windowMs, double hopMs, double minHz, double maxHz, int framesPerEvent) {
+    }
+
+    public static final int DEFAULT_MEL_BANDS = 40;
+    public static final int DEFAULT_COEFFICIENTS = 13;
+    public static final double DEFAULT_WINDOW_MS = 25;
+    public static final double DEFAULT_HOP_MS = 10;
+    public static final double DEFAULT_MIN_HZ = 20;
+    public static final int DEFAULT_FRAMES_PER_EVENT = 10;
+
+    // Energies are floored before the natural log, silence would otherwise give -Infinity
+    static final double LOG_FLOOR = 1e-6;
+
+    private final FrequencyAnalyser analyser;
+    private final FrequencyAnalyser.PowerSpectrumListener collector = this::collect;
+    private final FeatureListener listener;
+    private final int channelCount;
+    private final int sampleRate;
+    private final int windowSize;
+    private final int framesPerEvent;
+    // Floats per frame, the mel band count for log-mel features and the coefficient count for MFCCs
+    private final int values;
+
+    // Band m weighs the bins from filterStart[m] on with filterWeights[m]
+    private final int[] filterStart;
+    private final float[][] filterWeights;
+    // dct[k][m] turns the log-mel energies into coefficient k, null for log-mel features
+    private final float[][] dct;
+    private final double[] logMel;
+    private final ByteBuffer batch;
+
+    private int bufferedFrames = 0;
+    private double batchStartMs = 0;
+
+    public MelFeatureExtractor(RecordingConfig config, Settings settings, FeatureListener listener) {
+        this.listener = listener;
+        this.channelCount = config.channelCount();
+        this.sampleRate = config.sampleRate();
+        this.windowSize = (int) Math.max(2, Math.round(sampleRate * settings.windowMs() / 1000));
+        int hopSize = (int) Math.max(1, Math.round(sampleRate * settings.hopMs() / 1000));
+        int frameSize = Integer.highestOneBit(windowSize) == windowSize ? windowSize : Integer.highestOneBit(windowSize) << 1;
+        this.framesPerEvent = Math.max(1, settings.framesPerEvent());
+
+        int bins = frameSize / 2;
+        int melBands = Math.max(1, Math.min(settings.melBands(), bins));
+        double nyquist = sampleRate / 2.0;
+        double maxHz = settings.maxHz() > 0 ? Math.min(settings.maxHz(), nyquist) : nyquist;
+        double minHz = settings.minHz() > 0 && settings.minHz() < maxHz ? settings.minHz() : 0;
+
+        this.analyser = new FrequencyAnalyser(frameSize, windowSize, hopSize, true);
+        this.filterStart = new int[melBands];
+        this.filterWeights = new float[melBands][];
+        designFilterbank(filterStart, filterWeights, bins, sampleRate / (double) frameSize, minHz, maxHz);
+        this.logMel = new double[melBands];
+
+        if (settings.type() == Type.MFCC) {
+            this.values = Math.max(1, Math.min(settings.coefficients(), melBands));
+            this.dct = designDct(values, melBands);
+        } else {
+            this.values = melBands;
+            this.dct = null;
+        }
+        this.batch = ByteBuffer.allocate(framesPerEvent * values * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void setTransformTimer(LatencyHistogram transformTimer) {
+        analyser.setTransformTimer(transformTimer);
+    }
+
+    public void onAudioBuffer(short[] samples, int length) {
+        analyser.analysePower(samples, length, channelCount, collector);
+    }
+
+    private void collect(double[] power) {
+        for (int band = 0; band < logMel.length; band++) {
+            float[] weights = filterWeights[band];
+            int start = filterStart[band];
+            double energy = 0;
+            for (int j = 0; j < weights.length; j++) {
+                energy += weights[j] * power[start + j];
+            }
+            logMel[band] = Math.log(Math.max(energy, LOG_FLOOR));
+        }
+
+        if (bufferedFrames == 0) {
+            batchStartMs = (analyser.getPosition() - windowSize) * 1000.0 / sampleRate;
+        }
+
+        int offset = bufferedFrames * values * Float.BYTES;
+        for (int k = 0; k < values; k++) {
+            double value = logMel[k];
+            if (dct != null) {
+                float[] basis = dct[k];
+                value = 0;
+                for (int m = 0; m < logMel.length; m++) {
+                    value += basis[m] * logMel[m];
+                }
+            }
+            batch.putFloat(offset + k * Float.BYTES, (float) value);
+        }
+
+        if (++bufferedFrames == framesPerEvent) {
+            listener.onFeatures(batch.array(), bufferedFrames * values * Float.BYTES, bufferedFrames, values, batchStartMs);
+            bufferedFrames = 0;
+        }
+    }
+
+    // Triangles evenly spaced on the HTK mel scale, each rising from the center of the band below to its own center and
+    // falling to the center of the band above. A band too narrow to cover any bin takes the bin nearest to its center
+    static void designFilterbank(int[] filterStart, float[][] filterWeights, int bins, double binHz, double minHz, double maxHz) {
+        int bands = filterStart.length;
+        double minMel = toMel(minHz);
+        double maxMel = toMel(maxHz);
+        double[] edges = new double[bands + 2];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = toHz(minMel + (maxMel - minMel) * i / (bands + 1));
+        }
+
+        for (int band = 0; band < bands; band++) {
+            double lower = edges[band];
+            double center = edges[band + 1];
+            double upper = edges[band + 2];
+
+            int first = Math.max(0, (int) Math.ceil(lower / binHz));
+            int last = Math.min(bins - 1, (int) Math.floor(upper / binHz));
+            float[] weights = new float[Math.max(0, last - first + 1)];
+            boolean covered = false;
+            for (int bin = first; bin <= last; bin++) {
+                double hz = bin * binHz;
+                double weight = hz <= center ? (hz - lower) / (center - lower) : (upper - hz) / (upper - center);
+                weights[bin - first] = (float) Math.max(0, weight);
+                covered |= weight > 0;
+            }
+
+            if (!covered) {
+                first = Math.min(bins - 1, (int) Math.round(center / binHz));
+                weights = new float[] { 1 };
+            }
+            filterStart[band] = first;
+            filterWeights[band] = weights;
+        }
+    }
+
+    static float[][] designDct(int coefficients, int bands) {
+        float[][] dct = new float[coefficients][bands];
+        for (int k = 0; k < coefficients; k++) {
+            double norm = Math.sqrt((k == 0 ? 1.0 : 2.0) / bands);
+            for (int m = 0; m < bands; m++) {
+                dct[k][m] = (float) (norm * Math.cos(Math.PI * k * (m + 0.5) / bands));
+            }
+        }
+        return dct;
+    }
+
+    static double toMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    static double toHz(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// A consumer thread draining one SampleRingBuffer, so a slow stage only ever fills its own ring
+class PipelineStage {
+
+    interface ErrorListener {
+        void onError(IOException exp);
+    }
+
+    // Upper bound for a missed wake-up, the producer normally unparks the stage right away
+    private static final long IDLE_WAIT_MS = 20;
+
+    private final SampleRingBuffer ring;
+    private final SampleRingBuffer.Reader reader;
+    private final ErrorListener errorListener;
+    private final int threadPriority;
+    private final Thread thread;
+    private volatile boolean closing = false;
+
+    // latency gets the time the reader takes for each buffer
+    PipelineStage(String name, int threadPriority, SampleRingBuffer ring, SampleRingBuffer.Reader reader, LatencyHistogram latency, ErrorListener errorListener) {
+        this.ring = ring;
+        this.reader = (samples, floatSamples, length) -> {
+            long startedAt = System.nanoTime();
+            reader.onSamples(samples, floatSamples, length);
+            latency.recordSince(startedAt);
+        };
+        this.errorListener = errorListener;
+        this.threadPriority = threadPriority;
+        this.thread = new Thread(this::run, name);
+    }
+
+    SampleRingBuffer getRing() {
+        return ring;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Returns once everything published before the call has been consumed
+    void close() throws InterruptedException {
+        closing = true;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    private void run() {
+        Process.setThreadPriority(threadPriority);
+
+        try {
+            while (true) {
+                // Read before draining, so a close never skips buffers published just ahead of it
+                boolean closed = closing;
+                if (ring.drain(reader) == 0) {
+                    if (closed) {
+                        break;
+                    }
+                    ring.awaitData(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (IOException exp) {
+            errorListener.onError(exp);
+        } catch (RuntimeException exp) {
+            // An uncaught exception would take the app down, and a dead stage would silently stop draining its ring
+            errorListener.onError(new IOException(exp));
+        }
+    }
+}
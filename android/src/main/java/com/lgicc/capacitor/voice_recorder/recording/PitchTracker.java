@@ -0,0 +1,210 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+// Fundamental frequency of overlapping windows by YIN (de Cheveigne and Kawahara, 2002). The difference function comes
+// from an FFT cross-correlation and running energy sums instead of the quadratic sum, so a frame costs three real FFTs
+// of the next power of two above two periods of minHz, whatever the pitch. All buffers are allocated in the constructor
+public class PitchTracker {
+
+    public interface PitchListener {
+        // A frequency of 0 marks an unvoiced frame. The arrays are reused, startMs is where the first window begins
+        void onPitch(float[] frequencies, float[] confidences, int frames, double startMs);
+    }
+
+    public record Settings(double minHz, double maxHz, double threshold, double hopMs, int framesPerEvent) {
+    }
+
+    public static final double DEFAULT_MIN_HZ = 60;
+    public static final double DEFAULT_MAX_HZ = 1000;
+    // Upper bound of the normalized difference at the period, the value suggested by the paper
+    public static final double DEFAULT_THRESHOLD = 0.15;
+    public static final double DEFAULT_HOP_MS = 10;
+    public static final int DEFAULT_FRAMES_PER_EVENT = 5;
+
+    // Windows quieter than this RMS, about -70 dBFS, are reported unvoiced without looking for a period
+    private static final double SILENCE_RMS = 3e-4;
+
+    private final PitchListener listener;
+    private final int channelCount;
+    private final int sampleRate;
+    private final int hopSize;
+    private final double threshold;
+    private final int framesPerEvent;
+
+    // Lags searched for the period, the integration window is maxLag samples long
+    private final int minLag;
+    private final int maxLag;
+    private final int frameLength;
+
+    private final double[] history;
+    private int historyPosition = 0;
+    private long historyFill = 0;
+    private int samplesSinceFrame = 0;
+
+    private final double[] frame;
+    // Running sum of squares, energy[i] covers frame[0] to frame[i - 1]
+    private final double[] energy;
+    private final double[] window;
+    private final double[] signal;
+    private final double[] difference;
+    private final DoubleFFT_1D fft;
+    private DurationRecorder frameTimer;
+
+    private final float[] frequencies;
+    private final float[] confidences;
+    private int bufferedFrames = 0;
+    private double batchStartMs = 0;
+
+    public PitchTracker(RecordingConfig config, Settings settings, PitchListener listener) {
+        this.listener = listener;
+        this.channelCount = config.channelCount();
+        this.sampleRate = config.sampleRate();
+        this.hopSize = (int) Math.max(1, Math.round(sampleRate * settings.hopMs() / 1000));
+        this.threshold = settings.threshold();
+        this.framesPerEvent = Math.max(1, settings.framesPerEvent());
+
+        double nyquist = sampleRate / 2.0;
+        double maxHz = Math.min(settings.maxHz(), nyquist);
+        double minHz = Math.max(1, Math.min(settings.minHz(), maxHz));
+        this.maxLag = (int) Math.ceil(sampleRate / minHz);
+        this.minLag = Math.max(2, (int) Math.floor(sampleRate / maxHz));
+        this.frameLength = 2 * maxLag + 1;
+
+        // Linear correlation of the window against the whole frame, frameLength is enough to keep it from wrapping
+        int fftSize = Integer.highestOneBit(frameLength) == frameLength ? frameLength : Integer.highestOneBit(frameLength) << 1;
+        this.history = new double[frameLength];
+        this.frame = new double[frameLength];
+        this.energy = new double[frameLength + 1];
+        this.window = new double[fftSize];
+        this.signal = new double[fftSize];
+        this.difference = new double[maxLag + 2];
+        this.fft = new DoubleFFT_1D(fftSize);
+
+        this.frequencies = new float[framesPerEvent];
+        this.confidences = new float[framesPerEvent];
+    }
+
+    // Times every frame, null turns it off
+    public void setFrameTimer(DurationRecorder frameTimer) {
+        this.frameTimer = frameTimer;
+    }
+
+    public void onAudioBuffer(short[] samples, int length) {
+        for (int i = 0; i + channelCount <= length; i += channelCount) {
+            int sample = samples[i];
+            for (int c = 1; c < channelCount; c++) {
+                sample += samples[i + c];
+            }
+
+            history[historyPosition] = sample / (32768.0 * channelCount);
+            historyPosition = (historyPosition + 1) % frameLength;
+            historyFill++;
+
+            if (++samplesSinceFrame >= hopSize && historyFill >= frameLength) {
+                samplesSinceFrame = 0;
+                long startedAt = frameTimer != null ? System.nanoTime() : 0;
+                analyseFrame();
+                if (frameTimer != null) {
+                    frameTimer.recordSince(startedAt);
+                }
+            }
+        }
+    }
+
+    private void analyseFrame() {
+        // The oldest sample sits at the write position of the ring
+        for (int i = 0; i < frameLength; i++) {
+            frame[i] = history[(historyPosition + i) % frameLength];
+            energy[i + 1] = energy[i] + frame[i] * frame[i];
+        }
+
+        if (bufferedFrames == 0) {
+            batchStartMs = (historyFill - frameLength) * 1000.0 / sampleRate;
+        }
+
+        double windowEnergy = energy[maxLag];
+        float frequency = 0;
+        float confidence = 0;
+        if (Math.sqrt(windowEnergy / maxLag) >= SILENCE_RMS) {
+            computeDifference();
+            double lag = findPeriod();
+            if (lag > 0) {
+                frequency = (float) (sampleRate / lag);
+            }
+            confidence = (float) Math.max(0, 1 - difference[Math.max(1, (int) Math.round(Math.abs(lag)))]);
+        }
+
+        frequencies[bufferedFrames] = frequency;
+        confidences[bufferedFrames] = confidence;
+        if (++bufferedFrames == framesPerEvent) {
+            listener.onPitch(frequencies, confidences, bufferedFrames, batchStartMs);
+            bufferedFrames = 0;
+        }
+    }
+
+    // Cumulative mean normalized difference for the lags 0 to maxLag + 1, from
+    // d(tau) = sum x[j]^2 + sum x[j + tau]^2 - 2 sum x[j] x[j + tau] over the first maxLag samples
+    private void computeDifference() {
+        int fftSize = window.length;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = i < maxLag ? frame[i] : 0;
+            signal[i] = i < frameLength ? frame[i] : 0;
+        }
+        fft.realForward(window);
+        fft.realForward(signal);
+
+        // signal * conj(window), packed as [Re0, Re(n/2), Re1, Im1, ...]
+        signal[0] *= window[0];
+        signal[1] *= window[1];
+        for (int k = 2; k < fftSize; k += 2) {
+            double re = signal[k] * window[k] + signal[k + 1] * window[k + 1];
+            double im = signal[k + 1] * window[k] - signal[k] * window[k + 1];
+            signal[k] = re;
+            signal[k + 1] = im;
+        }
+        fft.realInverse(signal, true);
+
+        double windowEnergy = energy[maxLag];
+        double runningSum = 0;
+        difference[0] = 1;
+        for (int lag = 1; lag < difference.length; lag++) {
+            double value = Math.max(0, windowEnergy + energy[lag + maxLag] - energy[lag] - 2 * signal[lag]);
+            runningSum += value;
+            difference[lag] = runningSum > 0 ? value * lag / runningSum : 1;
+        }
+    }
+
+    // The first dip below the threshold followed down to its minimum, refined by a parabola through its neighbours.
+    // Without such a dip the lowest point is returned negated, the frame is unvoiced but still has a confidence
+    private double findPeriod() {
+        int best = minLag;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            if (difference[lag] < threshold) {
+                while (lag + 1 <= maxLag && difference[lag + 1] < difference[lag]) {
+                    lag++;
+                }
+                return interpolate(lag);
+            }
+            if (difference[lag] < difference[best]) {
+                best = lag;
+            }
+        }
+        return -best;
+    }
+
+    private double interpolate(int lag) {
+        double before = difference[lag - 1];
+        double at = difference[lag];
+        double after = difference[lag + 1];
+        double curvature = before - 2 * at + after;
+        return curvature > 0 ? lag + 0.5 * (before - after) / curvature : lag;
+    }
+
+    public void reset() {
+        historyPosition = 0;
+        historyFill = 0;
+        samplesSinceFrame = 0;
+        bufferedFrames = 0;
+    }
+}
@@ -0,0 +1,173 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import java.util.Arrays;
+
+// Streaming sample rate conversion by the rational factor outputRate / inputRate, reduced to upFactor / downFactor.
+// A Kaiser windowed sinc low pass is split into upFactor phases, every output sample is one phase applied to the most
+// recent input, so nothing is computed for the zeros of the upsampling or for samples dropped by the downsampling.
+// All buffers are allocated in the constructor
+public class PolyphaseResampler {
+
+    public enum Quality {
+        // Taps per phase when upsampling, Kaiser beta and the share of the output band kept flat
+        LOW(8, 5.0, 0.80),
+        MEDIUM(16, 7.0, 0.90),
+        HIGH(32, 9.0, 0.95);
+
+        final int taps;
+        final double beta;
+        final double passband;
+
+        Quality(int taps, double beta, double passband) {
+            this.taps = taps;
+            this.beta = beta;
+            this.passband = passband;
+        }
+
+        public static Quality fromString(String quality) {
+            if ("low".equals(quality)) {
+                return LOW;
+            }
+            if ("high".equals(quality)) {
+                return HIGH;
+            }
+            return MEDIUM;
+        }
+    }
+
+    // Phases of the widest conversion between the common rates, 11025 to 192000 Hz. Nearly coprime rates would need
+    // close to a phase per output sample of a second, megabytes of coefficients, and are not supported
+    public static final int MAX_PHASES = 2560;
+
+    private final int inputRate;
+    private final int channelCount;
+    private final int upFactor;
+    private final int downFactor;
+    private final int taps;
+
+    // coefficients[phase][j] weighs the j-th oldest of the last taps input samples
+    private final float[][] coefficients;
+    // Per channel the last taps samples twice in a row, so the newest window is always contiguous
+    private final float[][] history;
+    private int historyPosition = 0;
+    private int phase = 0;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channelCount, Quality quality) {
+        this.inputRate = inputRate;
+        this.channelCount = channelCount;
+
+        int divisor = gcd(inputRate, outputRate);
+        this.upFactor = outputRate / divisor;
+        this.downFactor = inputRate / divisor;
+        if (upFactor > MAX_PHASES) {
+            throw new IllegalArgumentException("Cannot convert " + inputRate + " Hz to " + outputRate + " Hz");
+        }
+        // Downsampling needs a filter as long in time as the output period, so the taps grow with the ratio
+        this.taps = (int) Math.ceil(quality.taps * Math.max(1.0, (double) downFactor / upFactor));
+
+        this.coefficients = designFilter(upFactor, downFactor, taps, quality);
+        this.history = new float[channelCount][2 * taps];
+    }
+
+    public static boolean supports(int inputRate, int outputRate) {
+        return outputRate / gcd(inputRate, outputRate) <= MAX_PHASES;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    // Upper bound of the output samples for one process call with this many input samples
+    public int getMaxOutput(int inputLength) {
+        long frames = ((long) inputLength / channelCount * upFactor + downFactor - 1) / downFactor + 1;
+        return (int) frames * channelCount;
+    }
+
+    // Interleaved input of whole frames, from floatInput when given and from input otherwise. Writes to output and,
+    // when given, to floatOutput, and returns the samples written
+    public int process(short[] input, float[] floatInput, int length, short[] output, float[] floatOutput) {
+        int written = 0;
+        for (int frame = 0; frame + channelCount <= length; frame += channelCount) {
+            int newest = historyPosition + taps;
+            for (int c = 0; c < channelCount; c++) {
+                float sample = floatInput != null ? floatInput[frame + c] : input[frame + c] / 32768f;
+                history[c][historyPosition] = sample;
+                history[c][newest] = sample;
+            }
+            historyPosition = (historyPosition + 1) % taps;
+
+            // Every output sample that falls between this input sample and the next one
+            for (; phase < upFactor; phase += downFactor) {
+                float[] weights = coefficients[phase];
+                for (int c = 0; c < channelCount; c++) {
+                    float[] window = history[c];
+                    float sum = 0;
+                    for (int j = 0; j < taps; j++) {
+                        sum += weights[j] * window[historyPosition + j];
+                    }
+
+                    if (floatOutput != null) {
+                        floatOutput[written] = sum;
+                    }
+                    output[written++] = SampleConverter.toPcm16(sum);
+                }
+            }
+            phase -= upFactor;
+        }
+        return written;
+    }
+
+    public void reset() {
+        for (float[] channel : history) {
+            Arrays.fill(channel, 0);
+        }
+        historyPosition = 0;
+        phase = 0;
+    }
+
+    static float[][] designFilter(int upFactor, int downFactor, int taps, Quality quality) {
+        int length = upFactor * taps;
+        // Cut off below the lower of the two Nyquist frequencies, in cycles per sample at the upsampled rate
+        double cutoff = 0.5 * quality.passband / Math.max(upFactor, downFactor);
+        double center = (length - 1) / 2.0;
+        double besselBeta = bessel0(quality.beta);
+
+        float[][] phases = new float[upFactor][taps];
+        for (int p = 0; p < upFactor; p++) {
+            double sum = 0;
+            double[] phaseCoefficients = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                int n = p + k * upFactor;
+                double x = n - center;
+                double sinc = x == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+                double ratio = 2 * n / (double) (length - 1) - 1;
+                double window = bessel0(quality.beta * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / besselBeta;
+                phaseCoefficients[k] = sinc * window;
+                sum += phaseCoefficients[k];
+            }
+
+            // Every phase passes DC unchanged, otherwise the phases would ripple at the upsampling rate.
+            // Tap k applies to the input k samples back, the window is ordered oldest first
+            for (int k = 0; k < taps; k++) {
+                phases[p][taps - 1 - k] = (float) (phaseCoefficients[k] / sum);
+            }
+        }
+        return phases;
+    }
+
+    // Modified Bessel function of the first kind, order zero, by its power series
+    private static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,65 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+// The most recent audio of the capture, overwritten in place so its memory is the same however long it listens.
+// Only the capture thread writes and reads it
+class PrerollBuffer {
+
+    record Preroll(short[] samples, float[] floatSamples) {
+    }
+
+    private final short[] samples;
+    private final float[] floatSamples;
+    private final int frameSize;
+    private int position = 0;
+    private int size = 0;
+
+    // floats keeps the float capture as well, so float recordings get their preroll without a round trip through pcm16
+    PrerollBuffer(RecordingConfig config, long durationMs, boolean floats) {
+        this.frameSize = config.channelCount();
+        int capacity = (int) Math.max(1, durationMs * config.sampleRate() / 1000) * frameSize;
+        this.samples = new short[capacity];
+        this.floatSamples = floats ? new float[capacity] : null;
+    }
+
+    void write(short[] source, float[] floatSource, int length) {
+        // Only the tail of a read longer than the whole buffer survives anyway
+        int offset = Math.max(0, length - samples.length);
+        size = Math.min(samples.length, size + length - offset);
+        for (int remaining = length - offset; remaining > 0; ) {
+            int count = Math.min(remaining, samples.length - position);
+            System.arraycopy(source, offset, samples, position, count);
+            if (floatSamples != null && floatSource != null) {
+                System.arraycopy(floatSource, offset, floatSamples, position, count);
+            }
+
+            position = (position + count) % samples.length;
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    // Copies up to durationMs of the latest audio, oldest first, in whole frames. Null if there is none
+    Preroll copyLatest(long durationMs, int sampleRate) {
+        long requested = durationMs * sampleRate / 1000 * frameSize;
+        int length = (int) Math.min(requested, size) / frameSize * frameSize;
+        if (length <= 0) {
+            return null;
+        }
+
+        short[] copy = new short[length];
+        float[] floatCopy = floatSamples != null ? new float[length] : null;
+        int start = (position - length + samples.length) % samples.length;
+        int first = Math.min(length, samples.length - start);
+        System.arraycopy(samples, start, copy, 0, first);
+        System.arraycopy(samples, 0, copy, first, length - first);
+        if (floatCopy != null) {
+            System.arraycopy(floatSamples, start, floatCopy, 0, first);
+            System.arraycopy(floatSamples, 0, floatCopy, first, length - first);
+        }
+        return new Preroll(copy, floatCopy);
+    }
+
+    long getAllocatedBytes() {
+        return (long) samples.length * Short.BYTES + (floatSamples != null ? (long) floatSamples.length * Float.BYTES : 0);
+    }
+}
@@ -0,0 +1,129 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters of one recording, written from the capture and stage threads and read from any thread without locking
+public class RecorderMetrics {
+
+    // Blocking time of AudioRecord.read, close to the buffer duration while the device keeps up
+    private final LatencyHistogram read = new LatencyHistogram();
+    // Time the capture thread spends handing a read to the stage rings
+    private final LatencyHistogram handoff = new LatencyHistogram();
+    private final LatencyHistogram storage = new LatencyHistogram();
+    private final LatencyHistogram analysis = new LatencyHistogram();
+    private final LatencyHistogram stream = new LatencyHistogram();
+    // FFTs of the frequencyData events and the spectral voice activity check
+    private final LatencyHistogram fft = new LatencyHistogram();
+    // notifyListeners calls of the capture events
+    private final LatencyHistogram notify = new LatencyHistogram();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong samplesRead = new AtomicLong();
+    private final AtomicInteger minReadSize = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicInteger maxReadSize = new AtomicInteger();
+    private final AtomicLong readErrors = new AtomicLong();
+    private final AtomicInteger lastReadError = new AtomicInteger();
+    private final AtomicLong startedAtNanos = new AtomicLong();
+    // -1 until the first samples of the recording arrive
+    private final AtomicLong firstSampleNanos = new AtomicLong(-1);
+
+    // startedAt is when startRecording was called, as taken from System.nanoTime
+    public void markStarted(long startedAt) {
+        startedAtNanos.set(startedAt);
+        firstSampleNanos.set(-1);
+    }
+
+    public void onRead(int samples, long nanos) {
+        read.record(nanos);
+        if (samples < 0) {
+            readErrors.incrementAndGet();
+            lastReadError.set(samples);
+            return;
+        }
+
+        reads.incrementAndGet();
+        if (samples > 0 && firstSampleNanos.get() < 0) {
+            firstSampleNanos.compareAndSet(-1, System.nanoTime() - startedAtNanos.get());
+        }
+        samplesRead.addAndGet(samples);
+        if (samples < minReadSize.get()) {
+            minReadSize.accumulateAndGet(samples, Math::min);
+        }
+        if (samples > maxReadSize.get()) {
+            maxReadSize.accumulateAndGet(samples, Math::max);
+        }
+    }
+
+    public LatencyHistogram getReadLatency() {
+        return read;
+    }
+
+    public LatencyHistogram getHandoffLatency() {
+        return handoff;
+    }
+
+    public LatencyHistogram getStorageLatency() {
+        return storage;
+    }
+
+    public LatencyHistogram getAnalysisLatency() {
+        return analysis;
+    }
+
+    public LatencyHistogram getStreamLatency() {
+        return stream;
+    }
+
+    public LatencyHistogram getFftLatency() {
+        return fft;
+    }
+
+    public LatencyHistogram getNotifyLatency() {
+        return notify;
+    }
+
+    public long getReadErrors() {
+        return readErrors.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[] { read, handoff, storage, analysis, stream, fft, notify }) {
+            histogram.reset();
+        }
+        reads.set(0);
+        samplesRead.set(0);
+        minReadSize.set(Integer.MAX_VALUE);
+        maxReadSize.set(0);
+        readErrors.set(0);
+        lastReadError.set(0);
+        firstSampleNanos.set(-1);
+    }
+
+    public JSObject toJSObject() {
+        long readCount = reads.get();
+        JSObject toReturn = new JSObject();
+        toReturn.put("reads", readCount);
+        toReturn.put("samplesRead", samplesRead.get());
+        toReturn.put("minReadSize", readCount > 0 ? minReadSize.get() : 0);
+        toReturn.put("maxReadSize", maxReadSize.get());
+        toReturn.put("meanReadSize", readCount > 0 ? (double) samplesRead.get() / readCount : 0);
+        toReturn.put("readErrors", readErrors.get());
+        toReturn.put("lastReadError", lastReadError.get());
+        long firstSample = firstSampleNanos.get();
+        toReturn.put("startToFirstSampleMs", firstSample >= 0 ? firstSample / 1_000_000.0 : -1);
+
+        JSObject latencies = new JSObject();
+        latencies.put("read", read.toJSObject());
+        latencies.put("handoff", handoff.toJSObject());
+        latencies.put("storage", storage.toJSObject());
+        latencies.put("analysis", analysis.toJSObject());
+        latencies.put("stream", stream.toJSObject());
+        latencies.put("fft", fft.toJSObject());
+        latencies.put("notify", notify.toJSObject());
+        toReturn.put("latencies", latencies);
+        return toReturn;
+    }
+}
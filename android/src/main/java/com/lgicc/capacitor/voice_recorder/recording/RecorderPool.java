@@ -0,0 +1,177 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
+
+import java.io.File;
+import java.io.IOException;
+
+// Keeps the AudioRecord and an encoder of the next take ready between recordings once prepare has been called.
+// Building an AudioRecord initialises the HAL, which takes 100 to 300 ms on some devices
+class RecorderPool {
+
+    record PreparedEncoder(File file, AudioEncoder encoder, RecordingConfig config, OutputFormat format) {
+    }
+
+    private final File recordingsDirectory;
+    private final Handler idleHandler = new Handler(Looper.getMainLooper());
+    private final Runnable idleRelease = this::releaseIdle;
+
+    // Stays on once prepare was called, only the resources are given up when idle
+    private boolean keepWarm = false;
+    private long idleTimeoutMs = 0;
+    private OutputFormat warmFormat;
+
+    private RecordingConfig warmConfig;
+    private AudioRecord warmRecorder;
+    private PreparedEncoder warmEncoder;
+
+    RecorderPool(File recordingsDirectory) {
+        this.recordingsDirectory = recordingsDirectory;
+    }
+
+    // format may be null to only keep the AudioRecord warm
+    synchronized void prepare(RecordingConfig config, OutputFormat format, long idleTimeoutMs) throws IOException {
+        keepWarm = true;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        if (warmRecorder != null && !config.equals(warmConfig)) {
+            releaseIdle();
+        }
+        warmFormat = format;
+        if (warmRecorder == null) {
+            warmRecorder = build(config);
+            warmConfig = config;
+        }
+        prepareEncoder();
+        scheduleIdleRelease();
+    }
+
+    // Creates the encoder of the next take without touching the microphone, e.g. while the permission dialog is up.
+    // Without a prepare call it is released after idleTimeoutMs unless a recording picks it up
+    synchronized void prepareEncoder(RecordingConfig config, OutputFormat format, long idleTimeoutMs) throws IOException {
+        discardMismatchedEncoder(config, format);
+        if (warmEncoder == null) {
+            warmEncoder = createEncoder(config, format);
+        }
+        if (!keepWarm) {
+            idleHandler.removeCallbacks(idleRelease);
+            idleHandler.postDelayed(idleRelease, idleTimeoutMs);
+        }
+    }
+
+    synchronized AudioRecord acquireRecorder(RecordingConfig config) {
+        idleHandler.removeCallbacks(idleRelease);
+
+        AudioRecord recorder = warmRecorder;
+        warmRecorder = null;
+        if (recorder != null && config.equals(warmConfig)) {
+            return recorder;
+        }
+
+        if (recorder != null) {
+            recorder.release();
+        }
+        return build(config);
+    }
+
+    // Null unless an encoder for exactly this take was prepared
+    synchronized PreparedEncoder acquireEncoder(RecordingConfig config, OutputFormat format) {
+        PreparedEncoder encoder = warmEncoder;
+        warmEncoder = null;
+        if (encoder != null && config.equals(encoder.config()) && format == encoder.format()) {
+            return encoder;
+        }
+
+        if (encoder != null) {
+            encoder.encoder().discard();
+        }
+        return null;
+    }
+
+    // Takes the AudioRecord back after a take, stopped already
+    synchronized void recycle(RecordingConfig config, AudioRecord recorder) {
+        if (!keepWarm || warmRecorder != null) {
+            recorder.release();
+            return;
+        }
+
+        warmRecorder = recorder;
+        warmConfig = config;
+        try {
+            prepareEncoder();
+        } catch (IOException exp) {
+            // The next take creates its encoder itself
+            warmEncoder = null;
+        }
+        scheduleIdleRelease();
+    }
+
+    synchronized void releaseIdle() {
+        idleHandler.removeCallbacks(idleRelease);
+
+        if (warmRecorder != null) {
+            warmRecorder.release();
+            warmRecorder = null;
+        }
+        if (warmEncoder != null) {
+            warmEncoder.encoder().discard();
+            warmEncoder = null;
+        }
+    }
+
+    private void prepareEncoder() throws IOException {
+        discardMismatchedEncoder(warmConfig, warmFormat);
+        if (warmFormat != null && warmEncoder == null) {
+            warmEncoder = createEncoder(warmConfig, warmFormat);
+        }
+    }
+
+    private void discardMismatchedEncoder(RecordingConfig config, OutputFormat format) {
+        if (warmEncoder != null && (format != warmEncoder.format() || !config.equals(warmEncoder.config()))) {
+            warmEncoder.encoder().discard();
+            warmEncoder = null;
+        }
+    }
+
+    private PreparedEncoder createEncoder(RecordingConfig config, OutputFormat format) throws IOException {
+        if (!recordingsDirectory.exists() && !recordingsDirectory.mkdirs()) {
+            throw new IOException("Could not create " + recordingsDirectory);
+        }
+
+        File file = File.createTempFile("recording_", format.getFileExtension(), recordingsDirectory);
+        try {
+            return new PreparedEncoder(file, format.createEncoder(file, config.sampleRate(), config.channelCount(), config.isFloat()), config, format);
+        } catch (IOException | RuntimeException exp) {
+            file.delete();
+            throw exp;
+        }
+    }
+
+    private void scheduleIdleRelease() {
+        idleHandler.removeCallbacks(idleRelease);
+        if (idleTimeoutMs > 0) {
+            idleHandler.postDelayed(idleRelease, idleTimeoutMs);
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private static AudioRecord build(RecordingConfig config) {
+        return new AudioRecord.Builder()
+                .setAudioSource(MediaRecorder.AudioSource.VOICE_COMMUNICATION)
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(config.encoding())
+                        .setSampleRate(config.sampleRate())
+                        .setChannelMask(config.getChannelMask())
+                        .build())
+                .setBufferSizeInBytes(config.getBufferSize())
+                .build();
+    }
+}
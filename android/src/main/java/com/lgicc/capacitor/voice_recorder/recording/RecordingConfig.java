@@ -0,0 +1,136 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public record RecordingConfig(int sampleRate, int channelCount, int encoding) {
+
+    public static final String ENCODING_PCM_16BIT = "pcm16";
+    public static final String ENCODING_PCM_FLOAT = "float";
+
+    // 44.1 kHz mono 16-bit is the only configuration Android guarantees on every device
+    public static final RecordingConfig DEFAULT = new RecordingConfig(44100, 1, AudioFormat.ENCODING_PCM_16BIT);
+
+    private static final int[] PROBED_SAMPLE_RATES = { 8000, 11025, 16000, 22050, 32000, 44100, 48000 };
+    private static final int[] PROBED_CHANNEL_COUNTS = { 1, 2 };
+    private static final int[] PROBED_ENCODINGS = { AudioFormat.ENCODING_PCM_16BIT, AudioFormat.ENCODING_PCM_FLOAT };
+
+    // Samples per channel handed to the listeners per read, matches the 2048 frequency bins of the original fixed setup
+    private static final int FRAMES_PER_READ = 4096;
+
+    public static RecordingConfig of(Integer sampleRate, Integer channelCount, String encoding) {
+        return new RecordingConfig(
+                sampleRate != null ? sampleRate : DEFAULT.sampleRate(),
+                channelCount != null ? channelCount : DEFAULT.channelCount(),
+                ENCODING_PCM_FLOAT.equals(encoding) ? AudioFormat.ENCODING_PCM_FLOAT : AudioFormat.ENCODING_PCM_16BIT
+        );
+    }
+
+    public RecordingConfig withSampleRate(int sampleRate) {
+        return new RecordingConfig(sampleRate, channelCount, encoding);
+    }
+
+    public int getChannelMask() {
+        return channelCount == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+    }
+
+    public boolean isFloat() {
+        return encoding == AudioFormat.ENCODING_PCM_FLOAT;
+    }
+
+    public int getBytesPerSample() {
+        return isFloat() ? 4 : 2;
+    }
+
+    public long getBytesPerSecond() {
+        return (long) sampleRate * channelCount * getBytesPerSample();
+    }
+
+    public String getEncodingName() {
+        return isFloat() ? ENCODING_PCM_FLOAT : ENCODING_PCM_16BIT;
+    }
+
+    public int getSamplesPerRead() {
+        return FRAMES_PER_READ * channelCount;
+    }
+
+    public int getMinBufferSize() {
+        if (channelCount < 1 || channelCount > 2) {
+            return AudioRecord.ERROR_BAD_VALUE;
+        }
+
+        return AudioRecord.getMinBufferSize(sampleRate, getChannelMask(), encoding);
+    }
+
+    public boolean isSupported() {
+        return getMinBufferSize() > 0;
+    }
+
+    public int getBufferSize() {
+        // Room for two reads so the HAL can keep filling while the capture thread drains the previous one
+        return Math.max(getMinBufferSize(), getSamplesPerRead() * getBytesPerSample() * 2);
+    }
+
+    // The requested configuration, or the closest one the device supports: 16-bit before float, mono before stereo, 44.1 kHz last
+    public RecordingConfig resolveSupported() {
+        Set<RecordingConfig> candidates = new LinkedHashSet<>();
+        for (int candidateEncoding : new int[] { encoding, AudioFormat.ENCODING_PCM_16BIT }) {
+            for (int candidateChannels : new int[] { channelCount, 1 }) {
+                for (int candidateRate : new int[] { sampleRate, DEFAULT.sampleRate() }) {
+                    candidates.add(new RecordingConfig(candidateRate, candidateChannels, candidateEncoding));
+                }
+            }
+        }
+
+        for (RecordingConfig candidate : candidates) {
+            if (candidate.isSupported()) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    public JSObject toJSObject() {
+        JSObject toReturn = new JSObject();
+        toReturn.put("sampleRate", sampleRate);
+        toReturn.put("channels", channelCount);
+        toReturn.put("encoding", getEncodingName());
+
+        return toReturn;
+    }
+
+    // Ordered from the least to the most data per second
+    public static JSArray probeSupportedConfigs() {
+        List<RecordingConfig> configs = new ArrayList<>();
+
+        for (int probedRate : PROBED_SAMPLE_RATES) {
+            for (int probedChannels : PROBED_CHANNEL_COUNTS) {
+                for (int probedEncoding : PROBED_ENCODINGS) {
+                    RecordingConfig config = new RecordingConfig(probedRate, probedChannels, probedEncoding);
+                    if (config.isSupported()) {
+                        configs.add(config);
+                    }
+                }
+            }
+        }
+
+        // Stable, so equal rates keep the probing order: lower sample rate first
+        configs.sort(Comparator.comparingLong(RecordingConfig::getBytesPerSecond));
+
+        JSArray supported = new JSArray();
+        for (RecordingConfig config : configs) {
+            supported.put(config.toJSObject());
+        }
+        return supported;
+    }
+}
@@ -0,0 +1,116 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
+import com.lgicc.capacitor.voice_recorder.encoding.WavFileWriter;
+import com.lgicc.capacitor.voice_recorder.encoding.WavHeader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+// Small index next to a journaled recording, it outlives the process and tells the next launch what to finalise
+public final class RecordingJournal {
+
+    public static final String EXTENSION = ".journal";
+
+    private static final String KEY_RECORDING = "recording";
+    private static final String KEY_PCM = "pcm";
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_STARTED_AT = "startedAt";
+    private static final String KEY_CHECKPOINT_BYTES = "checkpointBytes";
+    private static final String KEY_CHECKPOINT_AT = "checkpointAt";
+
+    private final File file;
+    private final Properties index = new Properties();
+
+    // pcm is the WAV file the audio is journaled to, the recording itself when the format is WAV
+    public RecordingJournal(File recording, File pcm, OutputFormat format) throws IOException {
+        this.file = new File(recording.getParentFile(), recording.getName() + EXTENSION);
+        index.setProperty(KEY_RECORDING, recording.getName());
+        index.setProperty(KEY_PCM, pcm.getName());
+        index.setProperty(KEY_FORMAT, format.name());
+        index.setProperty(KEY_STARTED_AT, Long.toString(System.currentTimeMillis()));
+        checkpoint(0);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void checkpoint(long pcmBytes) throws IOException {
+        index.setProperty(KEY_CHECKPOINT_BYTES, Long.toString(pcmBytes));
+        index.setProperty(KEY_CHECKPOINT_AT, Long.toString(System.currentTimeMillis()));
+
+        // Written aside and renamed, so a kill in the middle never leaves a half written index behind
+        File pending = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(pending)) {
+            index.store(output, null);
+            output.getFD().sync();
+        }
+        if (!pending.renameTo(file)) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    // Finalises every session in the directory that was not stopped, except the ones still recording
+    public static List<RecordingResult> recoverAll(File directory, Collection<File> activeJournals) {
+        List<RecordingResult> recovered = new ArrayList<>();
+        File[] journals = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (journals == null) {
+            return recovered;
+        }
+
+        for (File journal : journals) {
+            if (activeJournals.contains(journal)) {
+                continue;
+            }
+
+            try {
+                RecordingResult result = recover(journal);
+                if (result != null) {
+                    recovered.add(result);
+                }
+            } catch (IOException ignored) {
+                // A journal without usable audio has nothing left to recover
+            }
+            journal.delete();
+        }
+
+        return recovered;
+    }
+
+    // Always yields a WAV file, re-encoding a multi-hour take would make the recovery time grow with its length
+    static RecordingResult recover(File journal) throws IOException {
+        Properties index = new Properties();
+        try (InputStream input = new FileInputStream(journal)) {
+            index.load(input);
+        }
+
+        File directory = journal.getParentFile();
+        File pcm = new File(directory, index.getProperty(KEY_PCM, ""));
+        File recording = new File(directory, index.getProperty(KEY_RECORDING, ""));
+        if (!pcm.isFile()) {
+            return null;
+        }
+
+        WavHeader.Info info = WavFileWriter.repairHeader(pcm);
+        if (!recording.equals(pcm)) {
+            // An encoder that never finished leaves an unplayable container, the journaled PCM replaces it
+            recording.delete();
+        }
+
+        // The size of the audio data without the header, like getEncodedSize() of a recording that was stopped
+        long durationMs = info.byteRate() > 0 ? info.dataSize() * 1000 / info.byteRate() : 0;
+        return new RecordingResult(pcm, OutputFormat.WAV.getMimeType(), info.sampleRate(), info.channelCount(), durationMs, info.dataSize());
+    }
+}
@@ -1,15 +1,42 @@
 package com.lgicc.capacitor.voice_recorder.recording;
 
+import android.net.Uri;
 import android.util.Base64;
+import android.util.Base64OutputStream;
 
 import com.getcapacitor.JSObject;
 
-public record RecordingResult(byte[] recordingData, long durationMs, int size) {
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public record RecordingResult(File file, String mimeType, int sampleRate, int channelCount, long durationMs, long size) {
     public JSObject toJSObject() {
-        String encodedRecordingData = Base64.encodeToString(this.recordingData, Base64.DEFAULT);
+        JSObject toReturn = new JSObject();
+        toReturn.put("path", this.file().getAbsolutePath());
+        toReturn.put("uri", Uri.fromFile(this.file()).toString());
+        toReturn.put("mimeType", this.mimeType());
+        toReturn.put("sampleRate", this.sampleRate());
+        toReturn.put("channels", this.channelCount());
+        toReturn.put("msDuration", this.durationMs());
+        toReturn.put("size", this.size());
+
+        return toReturn;
+    }
+
+    public JSObject toBase64JSObject() throws IOException {
+        // Base64 grows the payload by a third, size the buffer up front to avoid regrowing it
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream((int) (this.file().length() * 4 / 3 + 4));
+        try (Base64OutputStream base64 = new Base64OutputStream(encoded, Base64.DEFAULT)) {
+            Files.copy(this.file().toPath(), base64);
+        }
 
         JSObject toReturn = new JSObject();
-        toReturn.put("base64", encodedRecordingData);
+        toReturn.put("base64", encoded.toString("US-ASCII"));
+        toReturn.put("mimeType", this.mimeType());
+        toReturn.put("sampleRate", this.sampleRate());
+        toReturn.put("channels", this.channelCount());
         toReturn.put("msDuration", this.durationMs());
         toReturn.put("size", this.size());
 
@@ -0,0 +1,301 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import com.lgicc.capacitor.voice_recorder.error_messages.ErrorMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One take fed by the shared capture thread, with its own encoder, stages and pause state
+public class RecordingSession {
+
+    // About three seconds of audio at 44.1 kHz before a stalled storage stage starts losing buffers
+    private static final int STORAGE_RING_SLOTS = 32;
+    // Analysis only cares about recent audio, when it falls behind older buffers are dropped
+    private static final int ANALYSIS_RING_SLOTS = 4;
+    // Streamed audio must not have gaps, so it gets as much slack as storage
+    private static final int STREAM_RING_SLOTS = STORAGE_RING_SLOTS;
+
+    private final String id;
+    private final RecordingConfig config;
+    private final AudioEncoder recording;
+    private final SilenceGate silenceGate;
+    private final File journal;
+    private final WaveformIndex waveform;
+    private final boolean encodesFloat;
+
+    // Converts the capture to the rate of this session on the capture thread, null when the rates match
+    private final PolyphaseResampler resampler;
+    private final short[] resampled;
+    private final float[] resampledFloat;
+
+    // Requested history, copied by the capture thread right before the first buffer it hands to this session
+    private final long prerollMs;
+    private boolean primed = false;
+    private volatile PrerollBuffer.Preroll preroll;
+
+    // RECORDING <-> PAUSED -> NONE, a storage error ends the session on its own
+    private final AtomicReference<CurrentRecordingStatus> status = new AtomicReference<>(CurrentRecordingStatus.RECORDING);
+    private volatile IOException recordingError;
+    // A failed listener stage stops for good, every later buffer of its ring counts as dropped
+    private volatile IOException listenerError;
+    // Samples handed to the pipeline, paused reads are not counted
+    private final AtomicLong capturedSamples = new AtomicLong();
+
+    private final PipelineStage storageStage;
+    private final PipelineStage analysisStage;
+    private final PipelineStage streamStage;
+    private final List<PipelineStage> stages = new ArrayList<>();
+    private final SampleRingBuffer storage;
+    private final SampleRingBuffer[] listeners;
+
+    // listener may skip buffers when it falls behind, streamListener gets every buffer unless its ring overflows.
+    // prerollMs of audio captured before the start goes into the recording only, not to the listeners.
+    // config is the configuration of this session, a resampler converts the capture to its rate
+    RecordingSession(String id, RecordingConfig config, AudioEncoder recording, SilenceGate silenceGate, File journal, WaveformIndex waveform,
+                     AudioBufferListener listener, AudioBufferListener streamListener, RecorderMetrics metrics, long prerollMs,
+                     PolyphaseResampler resampler) {
+        this.id = id;
+        this.config = config;
+        this.recording = recording;
+        this.silenceGate = silenceGate;
+        this.journal = journal;
+        this.waveform = waveform;
+        this.prerollMs = prerollMs;
+        this.resampler = resampler;
+
+        encodesFloat = config.isFloat() && recording.acceptsFloat();
+        int slotSamples = resampler != null ? resampler.getMaxOutput(config.getSamplesPerRead()) : config.getSamplesPerRead();
+        resampled = resampler != null ? new short[slotSamples] : null;
+        resampledFloat = resampler != null && encodesFloat ? new float[slotSamples] : null;
+
+        storageStage = new PipelineStage("voice-recorder-storage-" + id, Process.THREAD_PRIORITY_AUDIO,
+                new SampleRingBuffer(STORAGE_RING_SLOTS, slotSamples, encodesFloat),
+                (samples, floatSamples, length) -> {
+                    encodePreroll();
+                    if (floatSamples != null) {
+                        recording.encode(floatSamples, length);
+                    } else {
+                        recording.encode(samples, length);
+                    }
+                },
+                metrics.getStorageLatency(),
+                exp -> {
+                    recordingError = exp;
+                    status.set(CurrentRecordingStatus.NONE);
+                });
+        // Without listeners there is nothing to analyse, the capture thread then feeds storage only
+        analysisStage = createListenerStage("voice-recorder-analysis-" + id, ANALYSIS_RING_SLOTS, slotSamples, listener, metrics.getAnalysisLatency());
+        streamStage = createListenerStage("voice-recorder-stream-" + id, STREAM_RING_SLOTS, slotSamples, streamListener, metrics.getStreamLatency());
+
+        List<SampleRingBuffer> listenerRings = new ArrayList<>();
+        for (PipelineStage stage : new PipelineStage[] { storageStage, analysisStage, streamStage }) {
+            if (stage != null) {
+                stages.add(stage);
+                if (stage != storageStage) {
+                    listenerRings.add(stage.getRing());
+                }
+            }
+        }
+        storage = storageStage.getRing();
+        listeners = listenerRings.toArray(new SampleRingBuffer[0]);
+    }
+
+    private PipelineStage createListenerStage(String name, int slots, int slotSamples, AudioBufferListener listener, LatencyHistogram latency) {
+        if (listener == null) {
+            return null;
+        }
+
+        return new PipelineStage(name, Process.THREAD_PRIORITY_DEFAULT,
+                new SampleRingBuffer(slots, slotSamples, false),
+                (samples, floatSamples, length) -> listener.onAudioBuffer(samples, length),
+                latency,
+                exp -> {
+                    Log.e("VoiceRecorder", name + " stopped", exp);
+                    listenerError = exp;
+                });
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public RecordingConfig getConfig() {
+        return config;
+    }
+
+    public CurrentRecordingStatus getStatus() {
+        return status.get();
+    }
+
+    // Peaks of what has been stored so far
+    public WaveformIndex getWaveform() {
+        return waveform;
+    }
+
+    File getJournalFile() {
+        return journal;
+    }
+
+    void start() {
+        for (PipelineStage stage : stages) {
+            stage.start();
+        }
+    }
+
+    // Called from the capture thread for every read, paused and ended sessions throw it away.
+    // history doesn't hold this read yet, so the preroll ends exactly where the first buffer starts
+    void offer(short[] samples, float[] floatSamples, int length, PrerollBuffer history) {
+        if (!primed) {
+            primed = true;
+            if (history != null && prerollMs > 0) {
+                preroll = resample(history.copyLatest(prerollMs, resampler != null ? resampler.getInputRate() : config.sampleRate()));
+            }
+        }
+        if (status.get() != CurrentRecordingStatus.RECORDING) {
+            return;
+        }
+
+        if (resampler != null) {
+            length = resampler.process(samples, floatSamples, length, resampled, resampledFloat);
+            samples = resampled;
+            floatSamples = resampledFloat;
+        }
+
+        capturedSamples.addAndGet(length);
+        storage.offer(samples, floatSamples, length);
+        for (SampleRingBuffer ring : listeners) {
+            ring.offer(samples, null, length);
+        }
+    }
+
+    // Only gates the hand-off, the AudioRecord and all threads keep running
+    void pause() throws Exception {
+        if (!status.compareAndSet(CurrentRecordingStatus.RECORDING, CurrentRecordingStatus.PAUSED)) {
+            throw new Exception(ErrorMessage.NOT_RECORDING);
+        }
+    }
+
+    void resume() throws Exception {
+        if (!status.compareAndSet(CurrentRecordingStatus.PAUSED, CurrentRecordingStatus.RECORDING)) {
+            throw new Exception(status.get() == CurrentRecordingStatus.RECORDING ? ErrorMessage.MICROPHONE_IN_USE : ErrorMessage.NOT_RECORDING);
+        }
+    }
+
+    // The microphone is gone, the session no longer records but still has to be finished
+    void endCapture() {
+        status.set(CurrentRecordingStatus.NONE);
+    }
+
+    // Runs ahead of the first live buffer through the resampler, so the live audio continues its filter state
+    private PrerollBuffer.Preroll resample(PrerollBuffer.Preroll captured) {
+        if (captured == null || resampler == null) {
+            return captured;
+        }
+
+        int length = captured.samples().length;
+        short[] samples = new short[resampler.getMaxOutput(length)];
+        float[] floatSamples = encodesFloat ? new float[samples.length] : null;
+        int written = resampler.process(captured.samples(), captured.floatSamples(), length, samples, floatSamples);
+        return new PrerollBuffer.Preroll(Arrays.copyOf(samples, written), floatSamples != null ? Arrays.copyOf(floatSamples, written) : null);
+    }
+
+    // Goes out ahead of the first live buffer, on the storage stage so the capture thread never waits for the encoder
+    private void encodePreroll() throws IOException {
+        PrerollBuffer.Preroll pending = preroll;
+        if (pending == null) {
+            return;
+        }
+
+        preroll = null;
+        if (encodesFloat && pending.floatSamples() != null) {
+            recording.encode(pending.floatSamples(), pending.floatSamples().length);
+        } else {
+            recording.encode(pending.samples(), pending.samples().length);
+        }
+        capturedSamples.addAndGet(pending.samples().length);
+    }
+
+    // Stops the stages and throws the recording away
+    void discard() throws InterruptedException {
+        status.set(CurrentRecordingStatus.NONE);
+        for (PipelineStage stage : stages) {
+            stage.close();
+        }
+        recording.discard();
+    }
+
+    // Drains the stages and finishes the encoder, the capture thread must not offer anything anymore
+    RecordingResult finish() throws Exception {
+        status.set(CurrentRecordingStatus.NONE);
+        for (PipelineStage stage : stages) {
+            stage.close();
+        }
+
+        if (recordingError == null) {
+            // Stopped before the storage stage got a buffer, e.g. paused right away
+            try {
+                encodePreroll();
+            } catch (IOException exp) {
+                recordingError = exp;
+            }
+        }
+        if (recordingError != null) {
+            recording.discard();
+            throw recordingError;
+        }
+
+        File file = recording.finish();
+        // The gate knows how much of the captured audio it kept, it may still have written a partial frame in finish
+        long durationMs = silenceGate != null
+                ? silenceGate.getRecordedDurationMs()
+                : capturedSamples.get() * 1000 / ((long) config.sampleRate() * config.channelCount());
+        return new RecordingResult(file, recording.getMimeType(), config.sampleRate(), config.channelCount(), durationMs, recording.getEncodedSize());
+    }
+
+    // Buffers the storage stage could not take in time, each one is audio missing from the recording
+    public long getOverruns() {
+        return storageStage.getRing().getDroppedBuffers();
+    }
+
+    // Buffers skipped by the analysis stage, the recording itself is not affected
+    public long getDroppedAnalysisBuffers() {
+        return analysisStage != null ? analysisStage.getRing().getDroppedBuffers() : 0;
+    }
+
+    // Buffers missing from the stream listener, each one is a gap in the streamed audio
+    public long getDroppedStreamBuffers() {
+        return streamStage != null ? streamStage.getRing().getDroppedBuffers() : 0;
+    }
+
+    public void putCounters(JSObject obj) {
+        obj.put("overruns", getOverruns());
+        obj.put("droppedBuffers", getDroppedAnalysisBuffers());
+        obj.put("droppedChunkBuffers", getDroppedStreamBuffers());
+        IOException error = listenerError;
+        if (error != null) {
+            obj.put("listenerError", error.getMessage());
+        }
+    }
+
+    void putPipelineUsage(JSObject obj) {
+        long bufferedBytes = 0;
+        long allocatedBytes = 0;
+        for (PipelineStage stage : stages) {
+            bufferedBytes += stage.getRing().getBufferedBytes();
+            allocatedBytes += stage.getRing().getAllocatedBytes();
+        }
+        obj.put("bufferedBytes", bufferedBytes);
+        obj.put("pipelineHeapBytes", allocatedBytes);
+        obj.put("encodedBytes", recording.getEncodedSize());
+    }
+}
@@ -0,0 +1,18 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+public final class SampleConverter {
+
+    private SampleConverter() {
+    }
+
+    public static void toPcm16(float[] source, short[] target, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = toPcm16(source[i]);
+        }
+    }
+
+    // Clamps to [-1.0, 1.0] before scaling, out of range input from the HAL would otherwise wrap around
+    public static short toPcm16(float sample) {
+        return (short) (Math.max(-1f, Math.min(1f, sample)) * Short.MAX_VALUE);
+    }
+}
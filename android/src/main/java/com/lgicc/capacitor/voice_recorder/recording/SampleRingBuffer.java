@@ -0,0 +1,110 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Lock-free ring of preallocated sample buffers for exactly one producer thread and one consumer thread
+public class SampleRingBuffer {
+
+    public interface Reader {
+        // floatSamples is null unless the ring was created with float slots, both arrays belong to the ring
+        void onSamples(short[] samples, float[] floatSamples, int length) throws IOException;
+    }
+
+    private final short[][] samples;
+    private final float[][] floatSamples;
+    private final int[] lengths;
+    private final int mask;
+
+    // Each sequence is only advanced by its own side, the other side just reads it
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong droppedBuffers = new AtomicLong();
+    private volatile Thread waitingReader;
+
+    // capacity is rounded up to a power of two
+    public SampleRingBuffer(int capacity, int samplesPerSlot, boolean floatSlots) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.samples = new short[slots][samplesPerSlot];
+        this.floatSamples = floatSlots ? new float[slots][samplesPerSlot] : null;
+        this.lengths = new int[slots];
+        this.mask = slots - 1;
+    }
+
+    public int getCapacity() {
+        return lengths.length;
+    }
+
+    public long getDroppedBuffers() {
+        return droppedBuffers.get();
+    }
+
+    public int size() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    // Heap held by the slots, allocated once for the whole recording
+    public long getAllocatedBytes() {
+        return (long) lengths.length * getSlotBytes();
+    }
+
+    // Audio waiting for the consumer, counted in full slots
+    public long getBufferedBytes() {
+        return (long) size() * getSlotBytes();
+    }
+
+    private int getSlotBytes() {
+        return samples[0].length * (floatSamples != null ? Short.BYTES + Float.BYTES : Short.BYTES);
+    }
+
+    // Never blocks the producer, a full ring drops the buffer and counts it instead
+    public boolean offer(short[] source, float[] floatSource, int length) {
+        long write = writeSequence.get();
+        if (write - readSequence.get() >= lengths.length) {
+            droppedBuffers.incrementAndGet();
+            return false;
+        }
+
+        int slot = (int) (write & mask);
+        System.arraycopy(source, 0, samples[slot], 0, length);
+        if (floatSamples != null && floatSource != null) {
+            System.arraycopy(floatSource, 0, floatSamples[slot], 0, length);
+        }
+        lengths[slot] = length;
+
+        // Ordered store, the slot contents are visible before the reader can see the new sequence
+        writeSequence.lazySet(write + 1);
+
+        Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+        return true;
+    }
+
+    // Hands every buffer published so far to the reader and frees its slot afterwards, returns how many were read
+    public int drain(Reader reader) throws IOException {
+        long read = readSequence.get();
+        long available = writeSequence.get();
+
+        int count = 0;
+        while (read < available) {
+            int slot = (int) (read & mask);
+            reader.onSamples(samples[slot], floatSamples != null ? floatSamples[slot] : null, lengths[slot]);
+            readSequence.lazySet(++read);
+            count++;
+        }
+        return count;
+    }
+
+    // Parks the consumer until the producer publishes or the timeout passes
+    public void awaitData(long timeout, TimeUnit unit) {
+        waitingReader = Thread.currentThread();
+        if (size() == 0) {
+            LockSupport.parkNanos(this, unit.toNanos(timeout));
+        }
+        waitingReader = null;
+    }
+}
@@ -0,0 +1,238 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+
+import java.io.File;
+import java.io.IOException;
+
+// Sits in front of the encoder and decides per detector frame what reaches storage
+public class SilenceGate implements AudioEncoder {
+
+    public enum Mode {
+        // Stores everything, only reports speech start and end
+        DETECT,
+        // Leaves out the pauses between speech
+        DROP_SILENCE,
+        // Leaves out silence before the first and after the last speech
+        TRIM;
+
+        public static Mode fromString(String mode) {
+            if ("dropSilence".equals(mode)) {
+                return DROP_SILENCE;
+            }
+            if ("trim".equals(mode)) {
+                return TRIM;
+            }
+            return DETECT;
+        }
+    }
+
+    public interface Listener {
+        // Times are positions in the captured audio, silence left out of the recording still counts
+        void onSpeechStart(long timeMs);
+
+        void onSpeechEnd(long timeMs);
+
+        // Called once per recording, the recorder has to be stopped from another thread
+        void onSilenceTimeout();
+    }
+
+    // autoStopSilenceMs <= 0 never times out
+    public record Settings(Mode mode, double thresholdDbfs, int hangoverMs, boolean spectral, long autoStopSilenceMs) {
+    }
+
+    // Kept in front of every speech start so the first syllable isn't clipped
+    private static final int PREROLL_MS = 200;
+    // Pauses in trimmed recordings are held back up to this length until it is clear more speech follows, so only the
+    // last 5 s of a longer trailing pause are trimmed
+    private static final int MAX_TRAILING_SILENCE_MS = 5000;
+
+    private final AudioEncoder encoder;
+    private final VoiceActivityDetector detector;
+    private final Mode mode;
+    private final Listener listener;
+    private final int sampleRate;
+    private final int frameLength;
+    private final int frameSamples;
+    private final long autoStopFrames;
+    private final int prerollFrames;
+
+    private final short[] frame;
+    private final float[] floatFrame;
+    private int framePosition = 0;
+
+    // Silent frames held back until it is known whether they belong in the recording
+    private final short[][] pending;
+    private final float[][] floatPending;
+    private int pendingStart = 0;
+    private int pendingCount = 0;
+
+    private long processedFrames = 0;
+    private long writtenSamples = 0;
+    private long silentFrames = 0;
+    private boolean speechHeard = false;
+    private boolean timedOut = false;
+
+    public SilenceGate(AudioEncoder encoder, RecordingConfig config, Settings settings, Listener listener) {
+        this.encoder = encoder;
+        this.detector = new VoiceActivityDetector(config, settings.thresholdDbfs(), settings.hangoverMs(), settings.spectral());
+        this.mode = settings.mode();
+        this.listener = listener;
+        this.sampleRate = config.sampleRate();
+        this.frameLength = detector.getFrameLength();
+        this.frameSamples = detector.getFrameSamples();
+        this.autoStopFrames = settings.autoStopSilenceMs() > 0 ? toFrames(settings.autoStopSilenceMs()) : 0;
+        this.prerollFrames = (int) toFrames(PREROLL_MS);
+
+        boolean floats = encoder.acceptsFloat();
+        this.frame = new short[frameSamples];
+        this.floatFrame = floats ? new float[frameSamples] : null;
+
+        int pendingFrames = switch (mode) {
+            case DETECT -> 0;
+            case DROP_SILENCE -> prerollFrames;
+            case TRIM -> Math.max(prerollFrames, (int) toFrames(MAX_TRAILING_SILENCE_MS));
+        };
+        this.pending = new short[pendingFrames][frameSamples];
+        this.floatPending = floats ? new float[pendingFrames][frameSamples] : null;
+    }
+
+    public void setTransformTimer(LatencyHistogram transformTimer) {
+        detector.setTransformTimer(transformTimer);
+    }
+
+    // Length of the audio that made it into the recording
+    public long getRecordedDurationMs() {
+        return writtenSamples * 1000 / ((long) sampleRate * (frameSamples / frameLength));
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, frameSamples - framePosition);
+            System.arraycopy(samples, i, frame, framePosition, count);
+            framePosition += count;
+            i += count;
+
+            if (framePosition == frameSamples) {
+                processFrame();
+            }
+        }
+    }
+
+    @Override
+    public boolean acceptsFloat() {
+        return encoder.acceptsFloat();
+    }
+
+    @Override
+    public void encode(float[] samples, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            floatFrame[framePosition] = samples[i];
+            frame[framePosition] = SampleConverter.toPcm16(samples[i]);
+
+            if (++framePosition == frameSamples) {
+                processFrame();
+            }
+        }
+    }
+
+    private void processFrame() throws IOException {
+        framePosition = 0;
+        long timeMs = processedFrames * frameLength * 1000 / sampleRate;
+        processedFrames++;
+
+        boolean wasSpeech = detector.isSpeech();
+        boolean speech = detector.process(frame);
+
+        if (speech) {
+            if (!wasSpeech) {
+                listener.onSpeechStart(timeMs);
+            }
+            speechHeard = true;
+            silentFrames = 0;
+            flushPending();
+            write(frame, floatFrame, frameSamples);
+            return;
+        }
+
+        if (wasSpeech) {
+            listener.onSpeechEnd(timeMs);
+        }
+        if (mode == Mode.DETECT) {
+            write(frame, floatFrame, frameSamples);
+        } else {
+            hold();
+        }
+
+        if (++silentFrames == autoStopFrames && !timedOut) {
+            timedOut = true;
+            listener.onSilenceTimeout();
+        }
+    }
+
+    // Only trimmed recordings hold back more than the preroll, and only once there is speech the pause can follow.
+    // Beyond that the oldest frame is stored when it sits inside a trimmed recording, and dropped otherwise
+    private void hold() throws IOException {
+        int capacity = mode == Mode.TRIM && speechHeard ? pending.length : prerollFrames;
+        if (pendingCount == capacity) {
+            if (mode == Mode.TRIM && speechHeard) {
+                write(pending[pendingStart], floatPending != null ? floatPending[pendingStart] : null, frameSamples);
+            }
+            pendingStart = (pendingStart + 1) % pending.length;
+            pendingCount--;
+        }
+
+        int slot = (pendingStart + pendingCount) % pending.length;
+        System.arraycopy(frame, 0, pending[slot], 0, frameSamples);
+        if (floatPending != null) {
+            System.arraycopy(floatFrame, 0, floatPending[slot], 0, frameSamples);
+        }
+        pendingCount++;
+    }
+
+    private void flushPending() throws IOException {
+        for (; pendingCount > 0; pendingCount--) {
+            write(pending[pendingStart], floatPending != null ? floatPending[pendingStart] : null, frameSamples);
+            pendingStart = (pendingStart + 1) % pending.length;
+        }
+    }
+
+    private void write(short[] samples, float[] floatSamples, int length) throws IOException {
+        if (floatSamples != null) {
+            encoder.encode(floatSamples, length);
+        } else {
+            encoder.encode(samples, length);
+        }
+        writtenSamples += length;
+    }
+
+    private long toFrames(long ms) {
+        return Math.max(1, (ms * sampleRate + frameLength * 1000L - 1) / (frameLength * 1000L));
+    }
+
+    // Held back silence is trailing silence by now, it only stays when the recording isn't gated at all
+    @Override
+    public File finish() throws IOException {
+        if (framePosition > 0 && (mode == Mode.DETECT || detector.isSpeech())) {
+            write(frame, floatFrame, framePosition - framePosition % (frameSamples / frameLength));
+        }
+        pendingCount = 0;
+        return encoder.finish();
+    }
+
+    @Override
+    public void discard() {
+        encoder.discard();
+    }
+
+    @Override
+    public String getMimeType() {
+        return encoder.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return encoder.getEncodedSize();
+    }
+}
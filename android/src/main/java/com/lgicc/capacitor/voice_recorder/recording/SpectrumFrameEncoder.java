@@ -0,0 +1,113 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Packs spectrum frames into the versioned binary format read by SpectrumFrameDecoder in the TS layer, little endian.
+// Header: u8 version, u8 bitsPerBin, u16 bins, u16 frames, u16 reserved, u32 sequence, f32 timeMs, f32 frameIntervalMs.
+// Every frame: u8 type, f32 scale, then its bins. A key frame holds the quantised bins, two per byte at 4 bits with the
+// high nibble first. A delta frame, only used at 8 bits, holds the change against the previous frame as signed nibbles.
+// It is only written when every bin changed by -8 to 7 steps
+public class SpectrumFrameEncoder {
+
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    static final int FRAME_HEADER_BYTES = 5;
+    static final int KEY_FRAME = 0;
+    static final int DELTA_FRAME = 1;
+
+    // Lets a listener that joined late, or missed an event, pick up the deltas again
+    static final int KEY_FRAME_INTERVAL = 32;
+
+    private final int bins;
+    private final int bitsPerBin;
+    private final boolean delta;
+    private final ByteBuffer packet;
+    private final int[] previous;
+    private final int[] quantised;
+
+    private boolean hasPrevious = false;
+    private int framesSinceKeyFrame = 0;
+    private int frames = 0;
+    private long sequence = 0;
+    private float timeMs;
+    private float frameIntervalMs;
+
+    // bitsPerBin is 8 or 4, anything else is treated as 8. At 4 bits a delta is as large as the bin, so delta is ignored
+    public SpectrumFrameEncoder(int bins, int maxFrames, int bitsPerBin, boolean delta) {
+        this.bins = bins;
+        this.bitsPerBin = bitsPerBin == 4 ? 4 : 8;
+        this.delta = delta && this.bitsPerBin == 8;
+        this.previous = new int[bins];
+        this.quantised = new int[bins];
+
+        int largestFrame = FRAME_HEADER_BYTES + (this.bitsPerBin == 8 ? bins : (bins + 1) / 2);
+        this.packet = ByteBuffer.allocate(HEADER_BYTES + maxFrames * largestFrame).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // timeMs is the capture position of the first frame, the following ones are frameIntervalMs apart
+    public void begin(double timeMs, double frameIntervalMs) {
+        this.timeMs = (float) timeMs;
+        this.frameIntervalMs = (float) frameIntervalMs;
+        frames = 0;
+        packet.clear();
+        packet.position(HEADER_BYTES);
+    }
+
+    // magnitudes are 0 to 255, scale is the log10 magnitude 255 stands for
+    public void addFrame(int[] magnitudes, double scale) {
+        int maxDelta = 0;
+        int minDelta = 0;
+        for (int i = 0; i < bins; i++) {
+            quantised[i] = bitsPerBin == 8 ? magnitudes[i] : magnitudes[i] >> 4;
+            if (hasPrevious) {
+                maxDelta = Math.max(maxDelta, quantised[i] - previous[i]);
+                minDelta = Math.min(minDelta, quantised[i] - previous[i]);
+            }
+        }
+
+        boolean deltaFrame = delta && hasPrevious && framesSinceKeyFrame < KEY_FRAME_INTERVAL && minDelta >= -8 && maxDelta <= 7;
+        packet.put((byte) (deltaFrame ? DELTA_FRAME : KEY_FRAME));
+        packet.putFloat((float) scale);
+
+        if (deltaFrame) {
+            for (int i = 0; i < bins; i += 2) {
+                int high = (quantised[i] - previous[i]) & 0xF;
+                int low = i + 1 < bins ? (quantised[i + 1] - previous[i + 1]) & 0xF : 0;
+                packet.put((byte) (high << 4 | low));
+            }
+            framesSinceKeyFrame++;
+        } else if (bitsPerBin == 8) {
+            for (int i = 0; i < bins; i++) {
+                packet.put((byte) quantised[i]);
+            }
+            framesSinceKeyFrame = 1;
+        } else {
+            for (int i = 0; i < bins; i += 2) {
+                packet.put((byte) (quantised[i] << 4 | (i + 1 < bins ? quantised[i + 1] : 0)));
+            }
+            framesSinceKeyFrame = 1;
+        }
+
+        System.arraycopy(quantised, 0, previous, 0, bins);
+        hasPrevious = true;
+        frames++;
+    }
+
+    // Writes the header and returns the packet length, the packet lives in getBuffer until the next begin
+    public int finish() {
+        packet.put(0, (byte) VERSION);
+        packet.put(1, (byte) bitsPerBin);
+        packet.putShort(2, (short) bins);
+        packet.putShort(4, (short) frames);
+        packet.putShort(6, (short) 0);
+        packet.putInt(8, (int) sequence++);
+        packet.putFloat(12, timeMs);
+        packet.putFloat(16, frameIntervalMs);
+        return packet.position();
+    }
+
+    public byte[] getBuffer() {
+        return packet.array();
+    }
+}
@@ -0,0 +1,134 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+// Frame based speech detection from energy and zero-crossing rate, optionally confirmed by the spectrum
+public class VoiceActivityDetector {
+
+    public static final double DEFAULT_THRESHOLD_DBFS = -45;
+    public static final int DEFAULT_HANGOVER_MS = 300;
+
+    // Voiced speech crosses zero far less often than hiss, fans or wind
+    private static final double MAX_VOICED_ZERO_CROSSING_RATE = 0.25;
+    // Unvoiced sounds like "s" or "f" get through on energy alone when they are this far above the threshold
+    private static final double UNVOICED_MARGIN_DB = 10;
+    // Speech has to stand out from the tracked background noise by this much
+    private static final double NOISE_MARGIN_DB = 9;
+    // How fast the noise floor follows a rising background, it drops to a quieter one immediately
+    private static final double NOISE_FLOOR_RISE = 0.02;
+    // Clicks shorter than this many frames never start speech
+    private static final int ATTACK_FRAMES = 2;
+
+    // Covers voice fundamentals and the formants that carry intelligibility
+    private static final double SPEECH_BAND_LOW_HZ = 100;
+    private static final double SPEECH_BAND_HIGH_HZ = 4000;
+    // Share of the frame's energy the band has to hold, white noise at 16 kHz puts about half of it there
+    private static final double MIN_SPEECH_BAND_SHARE = 0.75;
+
+    private final int channelCount;
+    private final int frameLength;
+    private final double thresholdDbfs;
+    private final int hangoverFrames;
+
+    private final FrequencyAnalyser analyser;
+    private final int speechBandLow;
+    private final int speechBandHigh;
+
+    private double noiseFloorDbfs = LevelMeter.MIN_DBFS;
+    private int activeFrames = 0;
+    private int inactiveFrames = 0;
+    private boolean speech = false;
+
+    public VoiceActivityDetector(RecordingConfig config, double thresholdDbfs, int hangoverMs, boolean spectral) {
+        this.channelCount = config.channelCount();
+        // A power of two between 16 and 32 ms, so the optional FFT runs on its fast path
+        this.frameLength = Integer.highestOneBit(Math.max(64, config.sampleRate() / 32));
+        this.thresholdDbfs = thresholdDbfs;
+        this.hangoverFrames = (int) Math.ceil(hangoverMs * config.sampleRate() / (1000.0 * frameLength));
+
+        this.analyser = spectral ? new FrequencyAnalyser(frameLength, frameLength, true) : null;
+        double binHz = (double) config.sampleRate() / frameLength;
+        this.speechBandLow = (int) Math.ceil(SPEECH_BAND_LOW_HZ / binHz);
+        this.speechBandHigh = (int) Math.min(frameLength / 2, Math.floor(SPEECH_BAND_HIGH_HZ / binHz) + 1);
+    }
+
+    public void setTransformTimer(LatencyHistogram transformTimer) {
+        if (analyser != null) {
+            analyser.setTransformTimer(transformTimer);
+        }
+    }
+
+    // Interleaved samples per frame
+    public int getFrameSamples() {
+        return frameLength * channelCount;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    public boolean isSpeech() {
+        return speech;
+    }
+
+    // Takes exactly getFrameSamples() samples from the start of frame and returns whether speech is ongoing, hangover included
+    public boolean process(short[] frame) {
+        long sumOfSquares = 0;
+        int zeroCrossings = 0;
+        int previous = 0;
+        for (int i = 0; i < frameLength; i++) {
+            int mixed = 0;
+            for (int c = 0; c < channelCount; c++) {
+                int sample = frame[i * channelCount + c];
+                sumOfSquares += (long) sample * sample;
+                mixed += sample;
+            }
+
+            if (i > 0 && (mixed >= 0) != (previous >= 0)) {
+                zeroCrossings++;
+            }
+            previous = mixed;
+        }
+
+        double dbfs = LevelMeter.toDbfs(Math.sqrt((double) sumOfSquares / (frameLength * channelCount)) / 32768.0);
+        double zeroCrossingRate = (double) zeroCrossings / frameLength;
+        double threshold = Math.max(thresholdDbfs, noiseFloorDbfs + NOISE_MARGIN_DB);
+
+        boolean active = dbfs > threshold && (zeroCrossingRate <= MAX_VOICED_ZERO_CROSSING_RATE || dbfs > threshold + UNVOICED_MARGIN_DB);
+        if (active && analyser != null) {
+            active = speechBandDominates(analyser.toPowerSpectrum(frame, getFrameSamples(), channelCount));
+        }
+
+        if (active) {
+            inactiveFrames = 0;
+            if (++activeFrames >= ATTACK_FRAMES) {
+                speech = true;
+            }
+        } else {
+            activeFrames = 0;
+            if (++inactiveFrames > hangoverFrames) {
+                speech = false;
+            }
+            noiseFloorDbfs = dbfs < noiseFloorDbfs ? dbfs : noiseFloorDbfs + (dbfs - noiseFloorDbfs) * NOISE_FLOOR_RISE;
+        }
+
+        return speech;
+    }
+
+    // Speech concentrates its energy below 4 kHz, broadband noise spreads it evenly over the spectrum
+    private boolean speechBandDominates(double[] power) {
+        // At 8 kHz the band is nearly the whole spectrum and there is nothing to compare against
+        if (speechBandHigh - speechBandLow > power.length * 0.8) {
+            return true;
+        }
+
+        double band = 0;
+        double total = 0;
+        for (int bin = 0; bin < power.length; bin++) {
+            total += power[bin];
+            if (bin >= speechBandLow && bin < speechBandHigh) {
+                band += power[bin];
+            }
+        }
+
+        return band >= total * MIN_SPEECH_BAND_SHARE;
+    }
+}
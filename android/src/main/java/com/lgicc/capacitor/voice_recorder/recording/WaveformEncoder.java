@@ -0,0 +1,66 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+
+import java.io.File;
+import java.io.IOException;
+
+// Indexes exactly the audio that reaches the encoder, so the peaks line up with the file even when silence is left out,
+// and saves them next to the finished recording
+class WaveformEncoder implements AudioEncoder {
+
+    private final AudioEncoder encoder;
+    private final WaveformIndex index;
+
+    WaveformEncoder(AudioEncoder encoder, WaveformIndex index) {
+        this.encoder = encoder;
+        this.index = index;
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        encoder.encode(samples, length);
+        index.add(samples, length);
+    }
+
+    @Override
+    public boolean acceptsFloat() {
+        return encoder.acceptsFloat();
+    }
+
+    @Override
+    public void encode(float[] samples, int length) throws IOException {
+        encoder.encode(samples, length);
+        index.add(samples, length);
+    }
+
+    @Override
+    public File finish() throws IOException {
+        File file = encoder.finish();
+        index.finish();
+
+        // The recording is complete at this point, a WAV gets its peaks back from a scan on the first query
+        File peaksFile = WaveformIndex.fileFor(file);
+        try {
+            index.write(peaksFile);
+        } catch (IOException exp) {
+            peaksFile.delete();
+        }
+        return file;
+    }
+
+    @Override
+    public void discard() {
+        encoder.discard();
+    }
+
+    @Override
+    public String getMimeType() {
+        return encoder.getMimeType();
+    }
+
+    @Override
+    public long getEncodedSize() {
+        return encoder.getEncodedSize();
+    }
+}
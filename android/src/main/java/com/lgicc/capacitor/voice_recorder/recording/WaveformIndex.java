@@ -0,0 +1,336 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import com.lgicc.capacitor.voice_recorder.encoding.WavHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// Min/max peaks of a recording at several resolutions, built while recording so a waveform of any length and zoom can
+// be drawn without decoding the audio. Every level folds whole buckets of the level below, so a sample costs one
+// comparison pair and a bucket one fold per level. Channels are folded together, peaks are 16-bit.
+// add runs on the storage stage, query may run on any thread while recording
+public class WaveformIndex {
+
+    // Frames per bucket of each level, every level a whole multiple of the one below
+    static final int[] BUCKET_FRAMES = { 256, 2048, 16384 };
+
+    static final String FILE_SUFFIX = ".peaks";
+    static final int MAGIC = 0x4B505657; // "WVPK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    private static final int INITIAL_BUCKETS = 256;
+    // Read size when a WAV without peaks has to be scanned
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    // min and max are -1 to 1 relative to full scale, one entry per requested bucket
+    public record Waveform(float[] min, float[] max, long startFrame, long endFrame, int sampleRate) {
+    }
+
+    private final int sampleRate;
+    private final int channelCount;
+
+    // Per level the finished buckets as interleaved min and max
+    private final short[][] peaks;
+    private final int[] bucketCount;
+    // Frames covered by the finished buckets of level 0
+    private long indexedFrames = 0;
+
+    // Bucket in progress per level, only touched by the thread that adds
+    private final int[] pendingMin;
+    private final int[] pendingMax;
+    private final int[] pendingFrames;
+    private int pendingChannel = 0;
+
+    public WaveformIndex(int sampleRate, int channelCount) {
+        this.sampleRate = sampleRate;
+        this.channelCount = Math.max(1, channelCount);
+        int levels = BUCKET_FRAMES.length;
+        peaks = new short[levels][2 * INITIAL_BUCKETS];
+        bucketCount = new int[levels];
+        pendingMin = new int[levels];
+        pendingMax = new int[levels];
+        pendingFrames = new int[levels];
+        Arrays.fill(pendingMin, Short.MAX_VALUE);
+        Arrays.fill(pendingMax, Short.MIN_VALUE);
+    }
+
+    // The peaks saved next to a recording
+    public static File fileFor(File recording) {
+        return new File(recording.getPath() + FILE_SUFFIX);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void add(short[] samples, int length) {
+        for (int i = 0; i < length; i++) {
+            addSample(samples[i]);
+        }
+    }
+
+    public void add(float[] samples, int length) {
+        for (int i = 0; i < length; i++) {
+            addSample(SampleConverter.toPcm16(samples[i]));
+        }
+    }
+
+    private void addSample(int sample) {
+        if (sample < pendingMin[0]) {
+            pendingMin[0] = sample;
+        }
+        if (sample > pendingMax[0]) {
+            pendingMax[0] = sample;
+        }
+
+        if (++pendingChannel == channelCount) {
+            pendingChannel = 0;
+            if (++pendingFrames[0] == BUCKET_FRAMES[0]) {
+                closeBucket(0);
+            }
+        }
+    }
+
+    // Ends the recording, partial buckets become the last bucket of their level
+    public void finish() {
+        if (pendingFrames[0] > 0) {
+            closeBucket(0);
+        }
+        for (int level = 1; level < BUCKET_FRAMES.length; level++) {
+            if (pendingFrames[level] > 0) {
+                closeBucket(level);
+            }
+        }
+    }
+
+    private void closeBucket(int level) {
+        int min = pendingMin[level];
+        int max = pendingMax[level];
+        int frames = pendingFrames[level];
+        pendingMin[level] = Short.MAX_VALUE;
+        pendingMax[level] = Short.MIN_VALUE;
+        pendingFrames[level] = 0;
+
+        synchronized (this) {
+            short[] levelPeaks = peaks[level];
+            int count = bucketCount[level];
+            if (2 * count == levelPeaks.length) {
+                levelPeaks = peaks[level] = Arrays.copyOf(levelPeaks, levelPeaks.length * 2);
+            }
+            levelPeaks[2 * count] = (short) min;
+            levelPeaks[2 * count + 1] = (short) max;
+            bucketCount[level] = count + 1;
+            if (level == 0) {
+                indexedFrames += frames;
+            }
+        }
+
+        int next = level + 1;
+        if (next < BUCKET_FRAMES.length) {
+            pendingMin[next] = Math.min(pendingMin[next], min);
+            pendingMax[next] = Math.max(pendingMax[next], max);
+            pendingFrames[next] += frames;
+            if (pendingFrames[next] == BUCKET_FRAMES[next]) {
+                closeBucket(next);
+            }
+        }
+    }
+
+    public synchronized long getIndexedFrames() {
+        return indexedFrames;
+    }
+
+    // Peaks of the frames from startFrame to endFrame in buckets of equal width, from the coarsest level that still
+    // resolves them. Clamped to what has been indexed, while recording that lags the capture by one bucket of level 0
+    public synchronized Waveform query(long startFrame, long endFrame, int buckets) {
+        long end = Math.min(endFrame, indexedFrames);
+        long start = Math.max(0, Math.min(startFrame, end));
+        if (end == start || buckets <= 0) {
+            return new Waveform(new float[0], new float[0], start, end, sampleRate);
+        }
+
+        double width = (double) (end - start) / buckets;
+        int level = 0;
+        while (level + 1 < BUCKET_FRAMES.length && BUCKET_FRAMES[level + 1] <= width) {
+            level++;
+        }
+
+        float[] min = new float[buckets];
+        float[] max = new float[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long from = start + (long) (bucket * width);
+            long to = Math.min(end, Math.max(from + 1, start + (long) ((bucket + 1) * width)));
+
+            // The tail of a recording in progress is only indexed by the finer levels so far
+            int bucketLevel = level;
+            while (bucketLevel > 0 && to > getCoveredFrames(bucketLevel)) {
+                bucketLevel--;
+            }
+            int size = BUCKET_FRAMES[bucketLevel];
+            short[] levelPeaks = peaks[bucketLevel];
+            int first = (int) (from / size);
+            int last = (int) Math.min((to - 1) / size, bucketCount[bucketLevel] - 1);
+
+            int low = Short.MAX_VALUE;
+            int high = Short.MIN_VALUE;
+            for (int i = first; i <= last; i++) {
+                low = Math.min(low, levelPeaks[2 * i]);
+                high = Math.max(high, levelPeaks[2 * i + 1]);
+            }
+            min[bucket] = low / 32768f;
+            max[bucket] = high / 32768f;
+        }
+        return new Waveform(min, max, start, end, sampleRate);
+    }
+
+    private long getCoveredFrames(int level) {
+        return Math.min(indexedFrames, (long) bucketCount[level] * BUCKET_FRAMES[level]);
+    }
+
+    // Little endian: u32 magic, u16 version, u16 levels, u32 sampleRate, u32 channels, u64 frames, then per level
+    // u32 framesPerBucket, u32 buckets and the buckets as i16 min, i16 max
+    public synchronized void write(File file) throws IOException {
+        int size = HEADER_BYTES;
+        for (int level = 0; level < BUCKET_FRAMES.length; level++) {
+            size += 8 + 4 * bucketCount[level];
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) BUCKET_FRAMES.length);
+        buffer.putInt(sampleRate);
+        buffer.putInt(channelCount);
+        buffer.putLong(indexedFrames);
+        for (int level = 0; level < BUCKET_FRAMES.length; level++) {
+            buffer.putInt(BUCKET_FRAMES[level]);
+            buffer.putInt(bucketCount[level]);
+            buffer.asShortBuffer().put(peaks[level], 0, 2 * bucketCount[level]);
+            buffer.position(buffer.position() + 4 * bucketCount[level]);
+        }
+        buffer.flip();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static WaveformIndex read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            if (randomAccessFile.length() > Integer.MAX_VALUE || randomAccessFile.length() < HEADER_BYTES) {
+                throw new IOException("Not a waveform index: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) randomAccessFile.length()).order(ByteOrder.LITTLE_ENDIAN);
+            FileChannel channel = randomAccessFile.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Not a waveform index: " + file);
+                }
+            }
+            buffer.flip();
+
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION || buffer.getShort() != BUCKET_FRAMES.length) {
+                throw new IOException("Not a waveform index: " + file);
+            }
+            WaveformIndex index = new WaveformIndex(buffer.getInt(), buffer.getInt());
+            index.indexedFrames = buffer.getLong();
+            for (int level = 0; level < BUCKET_FRAMES.length; level++) {
+                if (buffer.remaining() < 8) {
+                    throw new IOException("Not a waveform index: " + file);
+                }
+                int framesPerBucket = buffer.getInt();
+                int buckets = buffer.getInt();
+                if (framesPerBucket != BUCKET_FRAMES[level] || buckets < 0 || buffer.remaining() < 4L * buckets) {
+                    throw new IOException("Not a waveform index: " + file);
+                }
+                index.peaks[level] = new short[Math.max(2, 2 * buckets)];
+                buffer.asShortBuffer().get(index.peaks[level], 0, 2 * buckets);
+                buffer.position(buffer.position() + 4 * buckets);
+                index.bucketCount[level] = buckets;
+            }
+            return index;
+        }
+    }
+
+    // Peaks of a finished recording: the saved index, or for a WAV without one, e.g. a recovered recording, a single
+    // scan of its data that is saved for the next time. Null for other formats without an index
+    public static WaveformIndex load(File recording) throws IOException {
+        File peaksFile = fileFor(recording);
+        if (peaksFile.exists()) {
+            try {
+                return read(peaksFile);
+            } catch (IOException exp) {
+                // Rebuilt below when the recording is a WAV
+                peaksFile.delete();
+            }
+        }
+
+        WaveformIndex index = scanWav(recording);
+        if (index != null) {
+            try {
+                index.write(peaksFile);
+            } catch (IOException exp) {
+                peaksFile.delete();
+            }
+        }
+        return index;
+    }
+
+    static WaveformIndex scanWav(File recording) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(recording, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            WavHeader.Info info;
+            try {
+                info = WavHeader.read(channel);
+            } catch (IOException exp) {
+                return null;
+            }
+            boolean isFloat = info.isFloat() && info.bitsPerSample() == 32;
+            if (!isFloat && (info.isFloat() || info.bitsPerSample() != 16)) {
+                return null;
+            }
+
+            WaveformIndex index = new WaveformIndex(info.sampleRate(), info.channelCount());
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            short[] samples = isFloat ? null : new short[SCAN_BYTES / Short.BYTES];
+            float[] floatSamples = isFloat ? new float[SCAN_BYTES / Float.BYTES] : null;
+            long position = info.dataOffset();
+            long end = Math.min(channel.size(), info.dataOffset() + info.dataSize());
+            int sampleBytes = isFloat ? Float.BYTES : Short.BYTES;
+
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(SCAN_BYTES, end - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+
+                int count = buffer.remaining() / sampleBytes;
+                if (isFloat) {
+                    buffer.asFloatBuffer().get(floatSamples, 0, count);
+                    index.add(floatSamples, count);
+                } else {
+                    buffer.asShortBuffer().get(samples, 0, count);
+                    index.add(samples, count);
+                }
+                // A sample split across reads is read again with the next one
+                position -= buffer.remaining() - count * sampleBytes;
+            }
+            index.finish();
+            return index;
+        }
+    }
+}
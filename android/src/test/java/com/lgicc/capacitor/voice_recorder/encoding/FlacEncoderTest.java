@@ -0,0 +1,243 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class FlacEncoderTest {
+
+    @Test
+    public void roundTripsMonoSpeechLikeSignal() throws Exception {
+        short[] samples = signal(44100 * 3 + 123, 1, 7);
+
+        Decoded decoded = decode(encode(samples, 44100, 1, 1000));
+
+        assertEquals(44100, decoded.sampleRate);
+        assertEquals(1, decoded.channels);
+        assertArrayEquals(samples, decoded.samples);
+    }
+
+    @Test
+    public void roundTripsStereoSilenceAndClipping() throws Exception {
+        short[] samples = new short[2 * 20000];
+        for (int i = 10000; i < samples.length; i++) {
+            samples[i] = i % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+
+        Decoded decoded = decode(encode(samples, 16000, 2, 512));
+
+        assertEquals(2, decoded.channels);
+        assertArrayEquals(samples, decoded.samples);
+    }
+
+    @Test
+    public void isMuchSmallerThanPcmForTonalInput() throws Exception {
+        short[] samples = new short[44100 * 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (Math.sin(2 * Math.PI * 220 * i / 44100) * 8000);
+        }
+
+        byte[] flac = encode(samples, 44100, 1, 4096);
+
+        assertTrue("flac was " + flac.length + " bytes", flac.length < samples.length * 2 / 3);
+    }
+
+    private static byte[] encode(short[] samples, int sampleRate, int channels, int chunkSize) throws Exception {
+        File file = File.createTempFile("encoder", ".flac");
+        file.deleteOnExit();
+
+        FlacEncoder encoder = new FlacEncoder(file, sampleRate, channels);
+        for (int offset = 0; offset < samples.length; offset += chunkSize) {
+            short[] chunk = Arrays.copyOfRange(samples, offset, Math.min(samples.length, offset + chunkSize));
+            encoder.encode(chunk, chunk.length);
+        }
+        encoder.finish();
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(bytes.length, encoder.getEncodedSize());
+        return bytes;
+    }
+
+    private static short[] signal(int length, int channels, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length * channels];
+        for (int i = 0; i < samples.length; i++) {
+            double tone = Math.sin(2 * Math.PI * 180 * i / 44100) * 6000 + Math.sin(2 * Math.PI * 1250 * i / 44100) * 2000;
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tone + random.nextGaussian() * 300));
+        }
+        return samples;
+    }
+
+    private static class Decoded {
+        int sampleRate;
+        int channels;
+        short[] samples;
+    }
+
+    // Minimal decoder for the subset the encoder produces, validates both checksums and the MD5 signature
+    private static Decoded decode(byte[] data) throws Exception {
+        BitReader in = new BitReader(data);
+        assertEquals("fLaC", new String(data, 0, 4, "US-ASCII"));
+        in.skip(32);
+
+        assertEquals(1, in.read(1));
+        assertEquals(0, in.read(7));
+        assertEquals(34, in.read(24));
+        in.read(16);
+        in.read(16);
+        in.read(24);
+        in.read(24);
+
+        Decoded decoded = new Decoded();
+        decoded.sampleRate = in.read(20);
+        decoded.channels = in.read(3) + 1;
+        assertEquals(15, in.read(5));
+        long totalFrames = (long) in.read(4) << 32 | in.read(32) & 0xFFFFFFFFL;
+        byte[] md5 = Arrays.copyOfRange(data, 26, 42);
+        in.skip(128);
+
+        decoded.samples = new short[(int) totalFrames * decoded.channels];
+        int written = 0;
+        int frameNumber = 0;
+
+        while (in.bytePosition() < data.length) {
+            int frameStart = in.bytePosition();
+            assertEquals(0x3FFE, in.read(14));
+            in.read(2);
+            assertEquals(0b0111, in.read(4));
+            in.read(4);
+            assertEquals(decoded.channels - 1, in.read(4));
+            assertEquals(0b100, in.read(3));
+            in.read(1);
+            assertEquals(frameNumber++, readUtf8(in));
+            int blockSize = in.read(16) + 1;
+            int headerCrc = FlacEncoder.crc8(Arrays.copyOfRange(data, frameStart, in.bytePosition()), in.bytePosition() - frameStart);
+            assertEquals(headerCrc, in.read(8));
+
+            int[][] channels = new int[decoded.channels][];
+            for (int c = 0; c < decoded.channels; c++) {
+                channels[c] = decodeSubframe(in, blockSize);
+            }
+            in.alignToByte();
+
+            int frameCrc = FlacEncoder.crc16(Arrays.copyOfRange(data, frameStart, in.bytePosition()), in.bytePosition() - frameStart);
+            assertEquals(frameCrc, in.read(16));
+
+            for (int i = 0; i < blockSize; i++) {
+                for (int c = 0; c < decoded.channels; c++) {
+                    decoded.samples[written++] = (short) channels[c][i];
+                }
+            }
+        }
+
+        assertEquals(decoded.samples.length, written);
+
+        byte[] pcm = new byte[decoded.samples.length * 2];
+        for (int i = 0; i < decoded.samples.length; i++) {
+            pcm[2 * i] = (byte) decoded.samples[i];
+            pcm[2 * i + 1] = (byte) (decoded.samples[i] >> 8);
+        }
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(pcm), md5);
+
+        return decoded;
+    }
+
+    private static int[] decodeSubframe(BitReader in, int blockSize) {
+        int[] x = new int[blockSize];
+        assertEquals(0, in.read(1));
+        int type = in.read(6);
+        assertEquals(0, in.read(1));
+
+        if (type == 0) {
+            Arrays.fill(x, in.readSigned(16));
+        } else if (type == 1) {
+            for (int i = 0; i < blockSize; i++) {
+                x[i] = in.readSigned(16);
+            }
+        } else {
+            assertEquals(0b001, type >> 3);
+            int order = type & 0b111;
+            for (int i = 0; i < order; i++) {
+                x[i] = in.readSigned(16);
+            }
+
+            assertEquals(0, in.read(2));
+            int partitionOrder = in.read(4);
+            int partitionSize = blockSize >> partitionOrder;
+            int i = order;
+            for (int p = 0; p < 1 << partitionOrder; p++) {
+                int k = in.read(4);
+                for (int end = (p + 1) * partitionSize; i < end; i++) {
+                    int quotient = 0;
+                    while (in.read(1) == 0) {
+                        quotient++;
+                    }
+                    int u = quotient << k | (k > 0 ? in.read(k) : 0);
+                    int r = (u >>> 1) ^ -(u & 1);
+
+                    switch (order) {
+                        case 0: x[i] = r; break;
+                        case 1: x[i] = r + x[i - 1]; break;
+                        case 2: x[i] = r + 2 * x[i - 1] - x[i - 2]; break;
+                        case 3: x[i] = r + 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3]; break;
+                        default: x[i] = r + 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                    }
+                }
+            }
+        }
+
+        return x;
+    }
+
+    private static int readUtf8(BitReader in) {
+        int first = in.read(8);
+        if (first < 0x80) {
+            return first;
+        }
+
+        int bytes = Integer.numberOfLeadingZeros(~(first << 24));
+        int value = first & (0xFF >> (bytes + 1));
+        for (int i = 1; i < bytes; i++) {
+            value = value << 6 | in.read(8) & 0x3F;
+        }
+        return value;
+    }
+
+    private static class BitReader {
+        private final byte[] data;
+        private long bit = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int read(int bits) {
+            int value = 0;
+            for (int i = 0; i < bits; i++, bit++) {
+                value = value << 1 | (data[(int) (bit >> 3)] >> (7 - (bit & 7))) & 1;
+            }
+            return value;
+        }
+
+        int readSigned(int bits) {
+            return read(bits) << (32 - bits) >> (32 - bits);
+        }
+
+        void skip(int bits) {
+            bit += bits;
+        }
+
+        void alignToByte() {
+            bit = (bit + 7) & ~7L;
+        }
+
+        int bytePosition() {
+            return (int) (bit >> 3);
+        }
+    }
+}
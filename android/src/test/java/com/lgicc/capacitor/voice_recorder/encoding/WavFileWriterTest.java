@@ -0,0 +1,86 @@
+package com.lgicc.capacitor.voice_recorder.encoding;
+
+import static org.junit.Assert.*;
+
+import com.lgicc.capacitor.voice_recorder.PcmToWavConverter;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void inMemoryConversionKeepsTheCanonicalHeader() {
+        byte[] wav = PcmToWavConverter.convertPCMToWAV(new byte[] { 1, 2, 3, 4 }, 16000, 2);
+        ByteBuffer header = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(48, wav.length);
+        assertEquals("RIFF", new String(wav, 0, 4));
+        assertEquals(40, header.getInt(4));
+        assertEquals(1, header.getShort(20));
+        assertEquals(2, header.getShort(22));
+        assertEquals(16000, header.getInt(24));
+        assertEquals(64000, header.getInt(28));
+        assertEquals(4, header.getShort(32));
+        assertEquals(16, header.getShort(34));
+        assertEquals(4, header.getInt(40));
+        assertEquals(4, wav[47]);
+    }
+
+    @Test
+    public void finishedFileDescribesItsData() throws Exception {
+        File file = folder.newFile("float.wav");
+        WavFileWriter writer = new WavFileWriter(file, 48000, 2, true);
+        writer.encode(new float[] { 0.5f, -0.5f, 0.25f, -0.25f }, 4);
+        writer.finish();
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            WavHeader.Info info = WavHeader.read(input.getChannel());
+            assertTrue(info.isFloat());
+            assertEquals(2, info.channelCount());
+            assertEquals(48000, info.sampleRate());
+            assertEquals(32, info.bitsPerSample());
+            assertEquals(16, info.dataSize());
+            assertEquals(file.length(), info.dataOffset() + info.dataSize());
+
+            input.seek(info.dataOffset());
+            assertEquals(0.5f, Float.intBitsToFloat(Integer.reverseBytes(input.readInt())), 0);
+        }
+    }
+
+    @Test
+    public void switchesToRf64PastFourGigabytesWithoutMovingTheData() throws Exception {
+        File file = folder.newFile("long.wav");
+        new WavFileWriter(file, 48000, 2).finish();
+
+        // A sparse 5 GB file stands in for a recording of about seven hours
+        long dataSize = 5L * 1024 * 1024 * 1024;
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(WavHeader.RESERVED_SIZE + dataSize);
+        }
+
+        long started = System.nanoTime();
+        WavHeader.Info repaired = WavFileWriter.repairHeader(file);
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals(dataSize, repaired.dataSize());
+        assertTrue("finalising took " + elapsedMs + " ms", elapsedMs < 500);
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            byte[] id = new byte[4];
+            input.readFully(id);
+            assertEquals("RF64", new String(id));
+
+            WavHeader.Info info = WavHeader.read(input.getChannel());
+            assertEquals(WavHeader.RESERVED_SIZE, info.dataOffset());
+            assertEquals(dataSize, info.dataSize());
+        }
+    }
+}
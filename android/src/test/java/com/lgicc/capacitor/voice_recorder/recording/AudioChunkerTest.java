@@ -0,0 +1,75 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import android.media.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class AudioChunkerTest {
+
+    private static final RecordingConfig STEREO_16K = new RecordingConfig(16000, 2, AudioFormat.ENCODING_PCM_16BIT);
+
+    @Test
+    public void splitsPcmIntoSequencedFixedDurationChunks() throws Exception {
+        List<byte[]> chunks = new ArrayList<>();
+        List<long[]> meta = new ArrayList<>();
+        AudioChunker chunker = new AudioChunker(STEREO_16K, 250, false, (sequence, chunk, length, startFrame, frames, last) -> {
+            chunks.add(Arrays.copyOf(chunk, length));
+            meta.add(new long[] { sequence, startFrame, frames, last ? 1 : 0 });
+        });
+
+        // 1.1 s in reads that do not line up with the chunk size
+        short[] buffer = new short[1234];
+        int total = 16000 * 2 * 11 / 10;
+        for (int written = 0; written < total; written += buffer.length) {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = (short) (written + i);
+            }
+            chunker.onAudioBuffer(buffer, Math.min(buffer.length, total - written));
+        }
+        chunker.flush();
+
+        assertEquals(5, chunks.size());
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(new long[] { i, i * 4000L, 4000, 0 }, meta.get(i));
+            assertEquals(4000 * 2 * 2, chunks.get(i).length);
+        }
+        assertArrayEquals(new long[] { 4, 16000, 1600, 1 }, meta.get(4));
+
+        // Concatenated chunks are exactly the captured samples
+        ByteBuffer joined = ByteBuffer.allocate(total * 2).order(ByteOrder.LITTLE_ENDIAN);
+        chunks.forEach(joined::put);
+        joined.flip();
+        for (int i = 0; i < total; i++) {
+            assertEquals((short) i, joined.getShort());
+        }
+    }
+
+    @Test
+    public void wavChunksCarryTheirOwnHeader() throws Exception {
+        List<byte[]> chunks = new ArrayList<>();
+        AudioChunker chunker = new AudioChunker(STEREO_16K, 100, true, (sequence, chunk, length, startFrame, frames, last) -> chunks.add(Arrays.copyOf(chunk, length)));
+
+        chunker.onAudioBuffer(new short[3200 + 100], 3300);
+        chunker.flush();
+
+        assertEquals(2, chunks.size());
+        assertWavHeader(chunks.get(0), 6400);
+        assertWavHeader(chunks.get(1), 200);
+    }
+
+    private static void assertWavHeader(byte[] chunk, int dataSize) {
+        ByteBuffer header = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", new String(chunk, 0, 4));
+        assertEquals(36 + dataSize, header.getInt(4));
+        assertEquals(16000, header.getInt(24));
+        assertEquals(2, header.getShort(22));
+        assertEquals(dataSize, header.getInt(40));
+        assertEquals(44 + dataSize, chunk.length);
+    }
+}
@@ -0,0 +1,115 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import android.media.AudioFormat;
+import com.lgicc.capacitor.voice_recorder.encoding.WavFileWriter;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class CapturePathAllocationTest {
+
+    private static final int SAMPLES_PER_READ = 4096;
+    private static final int WARM_UP_BUFFERS = 50;
+    private static final int MEASURED_BUFFERS = 500;
+
+    @Test
+    public void steadyStateCaptureDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        File file = File.createTempFile("capture", ".wav");
+        file.deleteOnExit();
+        WavFileWriter writer = new WavFileWriter(file, 44100, 1);
+        FrequencyAnalyser analyser = new FrequencyAnalyser();
+        short[] buffer = sine(SAMPLES_PER_READ, 440, 44100);
+
+        for (int i = 0; i < WARM_UP_BUFFERS; i++) {
+            capture(writer, analyser, buffer);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_BUFFERS; i++) {
+            capture(writer, analyser, buffer);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        writer.finish();
+
+        // A single short[] or int[] of a read is already 8 KB, allow a little noise from the counter itself
+        assertTrue("capture path allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void ringHandOffDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        SampleRingBuffer ring = new SampleRingBuffer(4, SAMPLES_PER_READ, true);
+        SampleRingBuffer.Reader reader = (samples, floatSamples, length) -> { };
+        short[] buffer = sine(SAMPLES_PER_READ, 440, 44100);
+        float[] floatBuffer = new float[SAMPLES_PER_READ];
+
+        for (int i = 0; i < WARM_UP_BUFFERS; i++) {
+            ring.offer(buffer, floatBuffer, buffer.length);
+            ring.drain(reader);
+        }
+
+        // The capture thread publishing and a stage consuming in turn
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_BUFFERS; i++) {
+            ring.offer(buffer, floatBuffer, buffer.length);
+            ring.drain(reader);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue("ring hand-off allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void resamplingSessionOfferDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        File file = File.createTempFile("capture", ".wav");
+        file.deleteOnExit();
+        WavFileWriter writer = new WavFileWriter(file, 16000, 1);
+        RecordingConfig output = new RecordingConfig(16000, 1, AudioFormat.ENCODING_PCM_16BIT);
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1, PolyphaseResampler.Quality.MEDIUM);
+        RecordingSession session = new RecordingSession("allocation", output, writer, null, null, new WaveformIndex(16000, 1),
+                (samples, length) -> { }, null, new RecorderMetrics(), 0, resampler);
+        short[] buffer = sine(SAMPLES_PER_READ, 440, 48000);
+
+        // The stages are not started, so past the warm-up the rings are full and every read is resampled, then dropped
+        for (int i = 0; i < WARM_UP_BUFFERS; i++) {
+            session.offer(buffer, null, buffer.length, null);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_BUFFERS; i++) {
+            session.offer(buffer, null, buffer.length, null);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        writer.discard();
+
+        assertTrue("session offer allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void reusedScratchBuffersFollowTheReadSize() {
+        FrequencyAnalyser analyser = new FrequencyAnalyser();
+        short[] buffer = sine(SAMPLES_PER_READ, 440, 44100);
+
+        assertEquals(SAMPLES_PER_READ / 2, analyser.toFrequencies(buffer, SAMPLES_PER_READ).length);
+        assertEquals(SAMPLES_PER_READ / 4, analyser.toFrequencies(buffer, SAMPLES_PER_READ / 2).length);
+    }
+
+    private static void capture(WavFileWriter writer, FrequencyAnalyser analyser, short[] buffer) throws Exception {
+        writer.encode(buffer, buffer.length);
+        analyser.toFrequencies(buffer, buffer.length);
+    }
+
+    private static short[] sine(int length, double frequency, int sampleRate) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(2 * Math.PI * frequency * i / sampleRate) * 16000);
+        }
+        return samples;
+    }
+}
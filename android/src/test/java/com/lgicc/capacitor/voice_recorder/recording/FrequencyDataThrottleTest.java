@@ -0,0 +1,81 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class FrequencyDataThrottleTest {
+
+    private static final RecordingConfig CONFIG = new RecordingConfig(44100, 1, 2);
+
+    @Test
+    public void limitsEventsToTheTargetRate() {
+        List<int[]> events = feed(2, 32, 1, 10);
+
+        assertTrue("got " + events.size() + " events", events.size() >= 18 && events.size() <= 21);
+        for (int[] event : events) {
+            assertArrayEquals(new int[] { 32, 32, 1 }, event);
+        }
+    }
+
+    @Test
+    public void coalescesFramesIntoOneEvent() {
+        List<int[]> events = feed(2, 64, 3, 10);
+
+        assertTrue("got " + events.size() + " events", events.size() >= 18 && events.size() <= 21);
+        for (int[] event : events) {
+            assertArrayEquals(new int[] { 3 * 64, 64, 3 }, event);
+        }
+    }
+
+    @Test
+    public void overlapsFramesWhenMoreAreDueThanFitBackToBack() {
+        List<int[]> events = feed(40, 16, 1, 5);
+
+        assertTrue("got " + events.size() + " events", events.size() >= 195 && events.size() <= 201);
+    }
+
+    @Test
+    public void keepsTheFullSpectrumByDefault() {
+        List<int[]> events = feed(0, 0, 1, 1);
+
+        assertEquals(44100 / FrequencyAnalyser.DEFAULT_FRAME_SIZE, events.size());
+        assertArrayEquals(new int[] { 2048, 2048, 1 }, events.get(0));
+    }
+
+    @Test
+    public void logBandsCoverEveryBinExactlyOnce() {
+        int[] edges = FrequencyAnalyser.generateLogBandEdges(2048, 48);
+
+        assertEquals(0, edges[0]);
+        assertEquals(2048, edges[48]);
+        for (int band = 0; band < 48; band++) {
+            assertTrue(edges[band + 1] > edges[band]);
+        }
+    }
+
+    private static List<int[]> feed(double eventsPerSecond, int bins, int framesPerEvent, int seconds) {
+        List<int[]> events = new ArrayList<>();
+        FrequencyDataThrottle throttle = new FrequencyDataThrottle(
+                CONFIG,
+                eventsPerSecond,
+                bins,
+                framesPerEvent,
+                FrequencyAnalyser.DEFAULT_FRAME_SIZE,
+                false,
+                (byte[] batch, int length, int batchBins, int frames) -> events.add(new int[] { length, batchBins, frames })
+        );
+
+        // Deliberately not a multiple of the analysis frame size
+        short[] buffer = new short[1000];
+        for (long read = 0; read < (long) seconds * CONFIG.sampleRate(); read += buffer.length) {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = (short) (Math.sin(2 * Math.PI * 440 * (read + i) / 44100) * 12000);
+            }
+            throttle.onAudioBuffer(buffer, buffer.length);
+        }
+        return events;
+    }
+}
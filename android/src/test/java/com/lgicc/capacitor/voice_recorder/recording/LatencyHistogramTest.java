@@ -0,0 +1,61 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void quantilesFallIntoPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5_000_000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        // 100 us lands below 128 us, 5 ms below 8192 us
+        assertEquals(128, histogram.getQuantileMicros(0.5));
+        assertEquals(128, histogram.getQuantileMicros(0.9));
+        assertEquals(8192, histogram.getQuantileMicros(0.99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getQuantileMicros(0.5));
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.getCount());
+    }
+
+    @Test
+    public void readErrorsAreCountedApartFromReads() {
+        RecorderMetrics metrics = new RecorderMetrics();
+        metrics.onRead(1024, 20_000_000);
+        metrics.onRead(-6, 1_000);
+
+        assertEquals(1, metrics.getReadErrors());
+        assertEquals(2, metrics.getReadLatency().getCount());
+    }
+}
@@ -0,0 +1,55 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import android.media.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class LevelMeterTest {
+
+    @Test
+    public void measuresRmsAndPeakOfASine() {
+        List<double[]> levels = new ArrayList<>();
+        LevelMeter meter = new LevelMeter(RecordingConfig.DEFAULT, 20, (rms, peak, clipped) -> levels.add(new double[] { rms, peak, clipped }));
+
+        short[] buffer = new short[4096];
+        int written = 0;
+        while (written < 44100) {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = (short) (Math.sin(2 * Math.PI * 441 * (written + i) / 44100) * 16384);
+            }
+            meter.onAudioBuffer(buffer, Math.min(buffer.length, 44100 - written));
+            written += buffer.length;
+        }
+
+        assertEquals(20, levels.size());
+        for (double[] level : levels) {
+            assertEquals(0.5 / Math.sqrt(2), level[0], 0.001);
+            assertEquals(0.5, level[1], 0.001);
+            assertEquals(0, level[2], 0);
+            assertEquals(-9.03, LevelMeter.toDbfs(level[0]), 0.05);
+        }
+    }
+
+    @Test
+    public void flagsClippingAndFloorsSilence() {
+        List<double[]> levels = new ArrayList<>();
+        RecordingConfig stereo = new RecordingConfig(8000, 2, AudioFormat.ENCODING_PCM_16BIT);
+        LevelMeter meter = new LevelMeter(stereo, 10, (rms, peak, clipped) -> levels.add(new double[] { rms, peak, clipped }));
+
+        // One window is 800 frames of two channels
+        short[] window = new short[1600];
+        meter.onAudioBuffer(window, window.length);
+        window[10] = Short.MAX_VALUE;
+        window[11] = Short.MIN_VALUE;
+        meter.onAudioBuffer(window, window.length);
+
+        assertEquals(2, levels.size());
+        assertEquals(LevelMeter.MIN_DBFS, LevelMeter.toDbfs(levels.get(0)[0]), 0);
+        assertEquals(0, levels.get(0)[2], 0);
+        assertEquals(1.0, levels.get(1)[1], 0);
+        assertEquals(2, levels.get(1)[2], 0);
+    }
+}
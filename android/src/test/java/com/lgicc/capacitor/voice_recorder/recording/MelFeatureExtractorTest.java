@@ -0,0 +1,140 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class MelFeatureExtractorTest {
+
+    private static final RecordingConfig CONFIG = new RecordingConfig(16000, 1, 2);
+
+    private static MelFeatureExtractor.Settings settings(MelFeatureExtractor.Type type, int framesPerEvent) {
+        return new MelFeatureExtractor.Settings(type, 40, 13, 25, 10, 20, 0, framesPerEvent);
+    }
+
+    private static short[] sine(int length, double frequency) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (Math.sin(2 * Math.PI * frequency * i / CONFIG.sampleRate()) * 8000);
+        }
+        return samples;
+    }
+
+    private static List<float[]> extract(MelFeatureExtractor.Type type, short[] signal, List<Double> startTimes) {
+        List<float[]> frames = new ArrayList<>();
+        MelFeatureExtractor extractor = new MelFeatureExtractor(CONFIG, settings(type, 4), (batch, length, count, perFrame, startMs) -> {
+            ByteBuffer packet = ByteBuffer.wrap(batch, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(count * perFrame * Float.BYTES, length);
+            for (int frame = 0; frame < count; frame++) {
+                float[] values = new float[perFrame];
+                for (int i = 0; i < perFrame; i++) {
+                    values[i] = packet.getFloat();
+                }
+                frames.add(values);
+            }
+            if (startTimes != null) {
+                startTimes.add(startMs);
+            }
+        });
+        // Reads that don't line up with the hops
+        for (int offset = 0; offset < signal.length; offset += 1000) {
+            int length = Math.min(1000, signal.length - offset);
+            short[] read = new short[length];
+            System.arraycopy(signal, offset, read, 0, length);
+            extractor.onAudioBuffer(read, length);
+        }
+        return frames;
+    }
+
+    @Test
+    public void toneLightsUpItsMelBand() {
+        List<Double> startTimes = new ArrayList<>();
+        List<float[]> frames = extract(MelFeatureExtractor.Type.LOG_MEL, sine(16000, 1000), startTimes);
+
+        // 400 sample windows every 160 samples fit 98 times into one second, only whole events are sent
+        assertEquals(96, frames.size());
+        assertEquals(0, startTimes.get(0), 0);
+        assertEquals(4 * 10, startTimes.get(1), 1e-9);
+
+        double mel = MelFeatureExtractor.toMel(1000);
+        double minMel = MelFeatureExtractor.toMel(20);
+        double maxMel = MelFeatureExtractor.toMel(8000);
+        int expectedBand = (int) Math.round((mel - minMel) / (maxMel - minMel) * 41) - 1;
+
+        float[] frame = frames.get(50);
+        int loudest = 0;
+        for (int band = 1; band < frame.length; band++) {
+            if (frame[band] > frame[loudest]) {
+                loudest = band;
+            }
+        }
+        assertTrue("loudest band " + loudest + ", expected " + expectedBand, Math.abs(loudest - expectedBand) <= 1);
+        assertEquals(Math.log(MelFeatureExtractor.LOG_FLOOR), frame[39], 1e-3);
+    }
+
+    @Test
+    public void mfccsAreTheDctOfTheLogMelEnergies() {
+        short[] signal = sine(8000, 440);
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] += (short) (Math.sin(2 * Math.PI * 2500 * i / CONFIG.sampleRate()) * 3000);
+        }
+
+        List<float[]> logMel = extract(MelFeatureExtractor.Type.LOG_MEL, signal, null);
+        List<float[]> mfcc = extract(MelFeatureExtractor.Type.MFCC, signal, null);
+        float[][] dct = MelFeatureExtractor.designDct(13, 40);
+
+        assertEquals(logMel.size(), mfcc.size());
+        assertEquals(13, mfcc.get(0).length);
+        for (int frame = 0; frame < mfcc.size(); frame += 7) {
+            for (int k = 0; k < 13; k++) {
+                double expected = 0;
+                for (int m = 0; m < 40; m++) {
+                    expected += dct[k][m] * logMel.get(frame)[m];
+                }
+                assertEquals(expected, mfcc.get(frame)[k], 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void everyBandCoversAtLeastOneBin() {
+        // 64 bands on 256 bins are narrower than a bin at the bottom
+        int[] start = new int[64];
+        float[][] weights = new float[64][];
+        MelFeatureExtractor.designFilterbank(start, weights, 256, 31.25, 0, 8000);
+
+        for (int band = 0; band < 64; band++) {
+            float peak = 0;
+            for (float weight : weights[band]) {
+                peak = Math.max(peak, weight);
+            }
+            assertTrue("band " + band, peak > 0 && peak <= 1);
+            assertTrue(start[band] + weights[band].length <= 256);
+            assertTrue(band == 0 || start[band] >= start[band - 1]);
+        }
+    }
+
+    @Test
+    public void steadyStateExtractionDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        MelFeatureExtractor extractor = new MelFeatureExtractor(CONFIG, settings(MelFeatureExtractor.Type.MFCC, 10), (batch, length, frames, perFrame, startMs) -> {
+        });
+        short[] buffer = sine(1024, 440);
+
+        for (int i = 0; i < 50; i++) {
+            extractor.onAudioBuffer(buffer, buffer.length);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 500; i++) {
+            extractor.onAudioBuffer(buffer, buffer.length);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue("extraction allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,77 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PitchTrackerTest {
+
+    private static final RecordingConfig SPEECH = new RecordingConfig(16000, 1, 2);
+    private static final PitchTracker.Settings DEFAULTS = new PitchTracker.Settings(
+            PitchTracker.DEFAULT_MIN_HZ, PitchTracker.DEFAULT_MAX_HZ, PitchTracker.DEFAULT_THRESHOLD, PitchTracker.DEFAULT_HOP_MS, PitchTracker.DEFAULT_FRAMES_PER_EVENT);
+
+    // A voice-like tone, the fundamental is weaker than its second harmonic
+    private static short[] voiced(int length, double frequency, int sampleRate, int channels) {
+        short[] samples = new short[length * channels];
+        for (int i = 0; i < length; i++) {
+            double t = 2 * Math.PI * frequency * i / sampleRate;
+            double value = 0.5 * Math.sin(t) + 0.8 * Math.sin(2 * t + 0.3) + 0.4 * Math.sin(3 * t + 1.1) + 0.2 * Math.sin(5 * t);
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = (short) (value * 6000);
+            }
+        }
+        return samples;
+    }
+
+    private static List<float[]> track(RecordingConfig config, short[] samples) {
+        List<float[]> frames = new ArrayList<>();
+        PitchTracker tracker = new PitchTracker(config, DEFAULTS, (frequencies, confidences, count, startMs) -> {
+            for (int i = 0; i < count; i++) {
+                frames.add(new float[] { frequencies[i], confidences[i] });
+            }
+        });
+        for (int offset = 0; offset < samples.length; offset += 1000) {
+            int length = Math.min(1000, samples.length - offset);
+            short[] read = new short[length];
+            System.arraycopy(samples, offset, read, 0, length);
+            tracker.onAudioBuffer(read, length);
+        }
+        return frames;
+    }
+
+    @Test
+    public void findsTheFundamentalOfAVoicedTone() {
+        for (double frequency : new double[] { 82.5, 150, 220, 440, 870 }) {
+            List<float[]> frames = track(SPEECH, voiced(16000, frequency, 16000, 1));
+
+            // One window of two 60 Hz periods, then one frame per 10 ms hop, in whole events of 5
+            assertEquals(95, frames.size());
+            for (float[] frame : frames) {
+                assertEquals("tone " + frequency, frequency, frame[0], frequency * 0.005);
+                assertTrue("tone " + frequency + " confidence " + frame[1], frame[1] > 0.9);
+            }
+        }
+    }
+
+    @Test
+    public void silenceAndNoiseAreUnvoiced() {
+        for (float[] frame : track(SPEECH, new short[16000])) {
+            assertEquals(0, frame[0], 0);
+            assertEquals(0, frame[1], 0);
+        }
+
+        Random random = new Random(5);
+        short[] noise = new short[16000];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) (random.nextGaussian() * 3000);
+        }
+        int voiced = 0;
+        for (float[] frame : track(SPEECH, noise)) {
+            voiced += frame[0] > 0 ? 1 : 0;
+        }
+        assertTrue(voiced + " noise frames voiced", voiced < 5);
+    }
+}
@@ -0,0 +1,104 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+
+    private static short[] tone(int sampleRate, double frequency, int channels, double seconds) {
+        short[] samples = new short[(int) (sampleRate * seconds) * channels];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (Math.sin(2 * Math.PI * frequency * (i / channels) / sampleRate) * 16000);
+        }
+        return samples;
+    }
+
+    private static short[] resample(PolyphaseResampler resampler, short[] input, int readSize) {
+        short[] output = new short[resampler.getMaxOutput(input.length)];
+        short[] scratch = new short[resampler.getMaxOutput(readSize)];
+        int written = 0;
+        for (int i = 0; i < input.length; i += readSize) {
+            short[] read = new short[Math.min(readSize, input.length - i)];
+            System.arraycopy(input, i, read, 0, read.length);
+            int count = resampler.process(read, null, read.length, scratch, null);
+            System.arraycopy(scratch, 0, output, written, count);
+            written += count;
+        }
+        short[] trimmed = new short[written];
+        System.arraycopy(output, 0, trimmed, 0, written);
+        return trimmed;
+    }
+
+    // Skips the first 100 ms, where the filter is still filling up
+    private static double rms(short[] samples, int skip) {
+        double sum = 0;
+        for (int i = skip; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (samples.length - skip));
+    }
+
+    @Test
+    public void downsamplesBy44100To16000WithTheRightLength() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000, 1, PolyphaseResampler.Quality.MEDIUM);
+        short[] input = tone(44100, 1000, 1, 1);
+        short[] output = resample(resampler, input, 4096);
+
+        assertEquals(16000, output.length, 1);
+        assertEquals(rms(input, 4410), rms(output, 1600), rms(input, 4410) * 0.02);
+    }
+
+    @Test
+    public void supportsTheCommonRatesButNotCoprimeOnes() {
+        int[] rates = { 8000, 11025, 16000, 22050, 32000, 44100, 48000, 96000, 192000 };
+        for (int inputRate : rates) {
+            for (int outputRate : rates) {
+                assertTrue(inputRate + " to " + outputRate, PolyphaseResampler.supports(inputRate, outputRate));
+            }
+        }
+
+        assertFalse(PolyphaseResampler.supports(48000, 44101));
+        assertThrows(IllegalArgumentException.class, () -> new PolyphaseResampler(48000, 8001, 1, PolyphaseResampler.Quality.MEDIUM));
+    }
+
+    @Test
+    public void removesWhatIsAboveTheNewNyquist() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1, PolyphaseResampler.Quality.HIGH);
+        short[] output = resample(resampler, tone(48000, 12000, 1, 1), 1000);
+
+        // 12 kHz would alias to 4 kHz, it has to be at least 40 dB down
+        assertTrue("rms " + rms(output, 1600), rms(output, 1600) < 16000 / Math.sqrt(2) / 100);
+    }
+
+    @Test
+    public void upsamplesStereoKeepingTheChannelsApart() {
+        PolyphaseResampler resampler = new PolyphaseResampler(16000, 48000, 2, PolyphaseResampler.Quality.LOW);
+        short[] input = new short[2 * 16000];
+        short[] left = tone(16000, 500, 1, 1);
+        for (int i = 0; i < left.length; i++) {
+            input[2 * i] = left[i];
+        }
+
+        short[] output = resample(resampler, input, 2 * 333);
+        assertEquals(2 * 48000, output.length, 2);
+
+        double rightSum = 0;
+        double leftSum = 0;
+        for (int i = 4800; i < output.length / 2; i++) {
+            leftSum += (double) output[2 * i] * output[2 * i];
+            rightSum += (double) output[2 * i + 1] * output[2 * i + 1];
+        }
+        assertEquals(16000 / Math.sqrt(2), Math.sqrt(leftSum / (output.length / 2 - 4800)), 16000 * 0.05);
+        assertEquals(0, rightSum, 0);
+    }
+
+    @Test
+    public void readSizeDoesNotChangeTheOutput() {
+        short[] input = tone(44100, 3000, 1, 0.5);
+        short[] whole = resample(new PolyphaseResampler(44100, 22050, 1, PolyphaseResampler.Quality.MEDIUM), input, input.length);
+        short[] pieces = resample(new PolyphaseResampler(44100, 22050, 1, PolyphaseResampler.Quality.MEDIUM), input, 7);
+
+        assertArrayEquals(whole, pieces);
+    }
+}
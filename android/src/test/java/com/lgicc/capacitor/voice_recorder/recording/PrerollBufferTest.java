@@ -0,0 +1,63 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import android.media.AudioFormat;
+import org.junit.Test;
+
+public class PrerollBufferTest {
+
+    private static final RecordingConfig STEREO = new RecordingConfig(1000, 2, AudioFormat.ENCODING_PCM_16BIT);
+
+    private static short[] ramp(int from, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (from + i);
+        }
+        return samples;
+    }
+
+    @Test
+    public void keepsOnlyTheLatestAudioInOrder() {
+        // 100 ms of stereo at 1 kHz are 200 samples
+        PrerollBuffer history = new PrerollBuffer(STEREO, 100, false);
+        for (int written = 0; written < 1000; written += 60) {
+            history.write(ramp(written, 60), null, 60);
+        }
+
+        PrerollBuffer.Preroll preroll = history.copyLatest(100, STEREO.sampleRate());
+        assertEquals(200, preroll.samples().length);
+        assertNull(preroll.floatSamples());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(1020 - 200 + i, preroll.samples()[i]);
+        }
+        assertEquals(200 * Short.BYTES, history.getAllocatedBytes());
+    }
+
+    @Test
+    public void copiesWhatIsThereInWholeFrames() {
+        PrerollBuffer history = new PrerollBuffer(STEREO, 100, true);
+        assertNull(history.copyLatest(100, STEREO.sampleRate()));
+
+        float[] floats = new float[30];
+        floats[29] = 0.5f;
+        history.write(ramp(0, 30), floats, 30);
+
+        // 10 ms are 20 samples, more than was captured only returns what there is
+        PrerollBuffer.Preroll preroll = history.copyLatest(10, STEREO.sampleRate());
+        assertEquals(20, preroll.samples().length);
+        assertEquals(10, preroll.samples()[0]);
+        assertEquals(0.5f, preroll.floatSamples()[19], 0);
+        assertEquals(30, history.copyLatest(1000, STEREO.sampleRate()).samples().length);
+    }
+
+    @Test
+    public void readLongerThanTheBufferKeepsItsTail() {
+        PrerollBuffer history = new PrerollBuffer(STEREO, 10, false);
+        history.write(ramp(0, 7), null, 7);
+        history.write(ramp(100, 50), null, 50);
+
+        short[] latest = history.copyLatest(10, STEREO.sampleRate()).samples();
+        assertArrayEquals(ramp(130, 20), latest);
+    }
+}
@@ -0,0 +1,136 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import com.lgicc.capacitor.voice_recorder.encoding.OutputFormat;
+import com.lgicc.capacitor.voice_recorder.encoding.WavFileWriter;
+import com.lgicc.capacitor.voice_recorder.encoding.WavHeader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversAWavRecordingThatWasNeverFinished() throws Exception {
+        File directory = folder.getRoot();
+        File file = new File(directory, "recording_1.wav");
+        JournaledEncoder encoder = new JournaledEncoder(new WavFileWriter(file, 44100, 1), file, OutputFormat.WAV, RecordingConfig.DEFAULT, 0);
+
+        short[] buffer = new short[4410];
+        for (int i = 0; i < 10; i++) {
+            encoder.encode(buffer, buffer.length);
+        }
+
+        // The process dies with half a sample written after the last read
+        try (FileOutputStream tail = new FileOutputStream(file, true)) {
+            tail.write(1);
+        }
+
+        List<RecordingResult> recovered = RecordingJournal.recoverAll(directory, Collections.emptySet());
+
+        assertEquals(1, recovered.size());
+        RecordingResult result = recovered.get(0);
+        assertEquals(file, result.file());
+        assertEquals(1000, result.durationMs());
+        assertEquals(44100, result.sampleRate());
+        assertEquals(1, result.channelCount());
+        assertEquals(88200, result.size());
+        assertHeaderCovers(file, 88200);
+        assertFalse(encoder.getJournalFile().exists());
+    }
+
+    @Test
+    public void replacesAnUnfinishedEncodedRecordingWithItsJournaledPcm() throws Exception {
+        File directory = folder.getRoot();
+        File file = new File(directory, "recording_2.m4a");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        JournaledEncoder encoder = new JournaledEncoder(new NullEncoder(file), file, OutputFormat.AAC, RecordingConfig.DEFAULT, 0);
+
+        short[] buffer = new short[441];
+        for (int i = 0; i < 5; i++) {
+            encoder.encode(buffer, buffer.length);
+        }
+
+        List<RecordingResult> recovered = RecordingJournal.recoverAll(directory, Collections.emptySet());
+
+        assertEquals(1, recovered.size());
+        assertEquals("audio/wav", recovered.get(0).mimeType());
+        assertEquals(50, recovered.get(0).durationMs());
+        assertHeaderCovers(recovered.get(0).file(), 441 * 5 * 2);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void leavesTheActiveAndFinishedRecordingsAlone() throws Exception {
+        File directory = folder.getRoot();
+        File active = new File(directory, "recording_3.wav");
+        JournaledEncoder activeEncoder = new JournaledEncoder(new WavFileWriter(active, 44100, 1), active, OutputFormat.WAV, RecordingConfig.DEFAULT, 0);
+        File finished = new File(directory, "recording_4.m4a");
+        JournaledEncoder finishedEncoder = new JournaledEncoder(new NullEncoder(finished), finished, OutputFormat.AAC, RecordingConfig.DEFAULT, 0);
+
+        activeEncoder.encode(new short[100], 100);
+        finishedEncoder.encode(new short[100], 100);
+        finishedEncoder.finish();
+
+        assertTrue(RecordingJournal.recoverAll(directory, Set.of(activeEncoder.getJournalFile())).isEmpty());
+        assertTrue(activeEncoder.getJournalFile().exists());
+
+        // Only the active recording and its journal are left, the PCM copy of the finished one is gone
+        String[] names = directory.list();
+        assertEquals(2, names.length);
+    }
+
+    private static void assertHeaderCovers(File file, int dataSize) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            WavHeader.Info info = WavHeader.read(input.getChannel());
+            assertEquals(dataSize, info.dataSize());
+            assertEquals(info.dataOffset() + dataSize, file.length());
+        }
+    }
+
+    // Stands in for an encoder whose container would be unreadable after a crash
+    private static class NullEncoder implements AudioEncoder {
+        private final File file;
+
+        NullEncoder(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void encode(short[] samples, int length) {
+        }
+
+        @Override
+        public File finish() {
+            return file;
+        }
+
+        @Override
+        public void discard() {
+            file.delete();
+        }
+
+        @Override
+        public String getMimeType() {
+            return "audio/mp4";
+        }
+
+        @Override
+        public long getEncodedSize() {
+            return 0;
+        }
+    }
+}
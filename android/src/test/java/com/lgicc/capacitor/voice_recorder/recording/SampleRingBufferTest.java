@@ -0,0 +1,77 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void fullRingDropsAndCountsInsteadOfBlocking() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(4, 8, false);
+        short[] samples = new short[8];
+
+        for (int i = 0; i < 6; i++) {
+            samples[0] = (short) i;
+            ring.offer(samples, null, samples.length);
+        }
+
+        assertEquals(4, ring.size());
+        assertEquals(2, ring.getDroppedBuffers());
+
+        int[] expected = { 0 };
+        assertEquals(4, ring.drain((buffer, floatBuffer, length) -> {
+            assertNull(floatBuffer);
+            assertEquals(expected[0]++, buffer[0]);
+        }));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void consumerSeesEveryPublishedBufferInOrder() throws Exception {
+        int buffers = 20000;
+        SampleRingBuffer ring = new SampleRingBuffer(8, 64, true);
+        long[] consumed = { 0 };
+
+        Thread consumer = new Thread(() -> {
+            try {
+                while (consumed[0] < buffers) {
+                    int read = ring.drain((samples, floatSamples, length) -> {
+                        int sequence = (samples[0] & 0xFFFF) | (samples[1] << 16);
+                        // Slots are copied whole, a torn read would mix two sequence numbers
+                        assertEquals(sequence, (samples[length - 2] & 0xFFFF) | (samples[length - 1] << 16));
+                        assertEquals(sequence, (int) floatSamples[0]);
+                        assertEquals(consumed[0], sequence);
+                        consumed[0]++;
+                    });
+                    if (read == 0) {
+                        ring.awaitData(1, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (Exception exp) {
+                throw new RuntimeException(exp);
+            }
+        });
+        consumer.start();
+
+        short[] samples = new short[64];
+        float[] floatSamples = new float[64];
+        for (int sequence = 0; sequence < buffers; ) {
+            samples[0] = samples[62] = (short) sequence;
+            samples[1] = samples[63] = (short) (sequence >> 16);
+            floatSamples[0] = sequence;
+
+            // Retry instead of dropping so the consumer can check it got every buffer exactly once
+            if (ring.offer(samples, floatSamples, samples.length)) {
+                sequence++;
+            } else {
+                Thread.yield();
+            }
+        }
+
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertEquals(buffers, consumed[0]);
+    }
+}
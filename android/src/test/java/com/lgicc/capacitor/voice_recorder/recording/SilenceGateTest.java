@@ -0,0 +1,165 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import android.media.AudioFormat;
+import com.lgicc.capacitor.voice_recorder.encoding.AudioEncoder;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class SilenceGateTest {
+
+    private static final RecordingConfig CONFIG = new RecordingConfig(16000, 1, AudioFormat.ENCODING_PCM_16BIT);
+
+    // 1 s silence, 1 s speech, 2 s silence, 1 s speech, 1 s silence
+    private static short[] twoUtterances() {
+        short[] signal = new short[6 * 16000];
+        for (int second : new int[] { 1, 4 }) {
+            for (int i = second * 16000; i < (second + 1) * 16000; i++) {
+                signal[i] = (short) (Math.sin(2 * Math.PI * 220 * i / 16000.0) * 8000);
+            }
+        }
+        return signal;
+    }
+
+    private static class Recorded implements SilenceGate.Listener {
+        final List<Long> starts = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+        int timeouts = 0;
+
+        @Override
+        public void onSpeechStart(long timeMs) {
+            starts.add(timeMs);
+        }
+
+        @Override
+        public void onSpeechEnd(long timeMs) {
+            ends.add(timeMs);
+        }
+
+        @Override
+        public void onSilenceTimeout() {
+            timeouts++;
+        }
+    }
+
+    private static class CountingEncoder implements AudioEncoder {
+        long samples = 0;
+
+        @Override
+        public void encode(short[] samples, int length) {
+            this.samples += length;
+        }
+
+        @Override
+        public File finish() {
+            return null;
+        }
+
+        @Override
+        public void discard() {
+        }
+
+        @Override
+        public String getMimeType() {
+            return "audio/wav";
+        }
+
+        @Override
+        public long getEncodedSize() {
+            return samples * 2;
+        }
+    }
+
+    private static CountingEncoder record(short[] signal, SilenceGate.Settings settings, Recorded listener) throws Exception {
+        CountingEncoder encoder = new CountingEncoder();
+        SilenceGate gate = new SilenceGate(encoder, CONFIG, settings, listener);
+        // Odd read sizes so frames straddle reads
+        for (int i = 0; i < signal.length; i += 1000) {
+            short[] read = new short[Math.min(1000, signal.length - i)];
+            System.arraycopy(signal, i, read, 0, read.length);
+            gate.encode(read, read.length);
+        }
+        gate.finish();
+        return encoder;
+    }
+
+    private static SilenceGate.Settings settings(SilenceGate.Mode mode, boolean spectral, long autoStopSilenceMs) {
+        return new SilenceGate.Settings(mode, VoiceActivityDetector.DEFAULT_THRESHOLD_DBFS, VoiceActivityDetector.DEFAULT_HANGOVER_MS, spectral, autoStopSilenceMs);
+    }
+
+    @Test
+    public void detectsSpeechStartAndEndWithHangover() throws Exception {
+        Recorded listener = new Recorded();
+        CountingEncoder encoder = record(twoUtterances(), settings(SilenceGate.Mode.DETECT, false, 0), listener);
+
+        assertEquals(6 * 16000, encoder.samples, 16000 * 0.016);
+        assertEquals(2, listener.starts.size());
+        assertEquals(2, listener.ends.size());
+        assertEquals(1000, listener.starts.get(0), 40);
+        assertEquals(4000, listener.starts.get(1), 40);
+        assertEquals(2000 + VoiceActivityDetector.DEFAULT_HANGOVER_MS, listener.ends.get(0), 40);
+        assertEquals(5000 + VoiceActivityDetector.DEFAULT_HANGOVER_MS, listener.ends.get(1), 40);
+    }
+
+    @Test
+    public void dropSilenceKeepsSpeechWithPrerollAndHangover() throws Exception {
+        CountingEncoder encoder = record(twoUtterances(), settings(SilenceGate.Mode.DROP_SILENCE, false, 0), new Recorded());
+
+        // Two utterances of 1 s, each with 200 ms ahead of it and the 300 ms hangover after it
+        assertEquals(2 * 1.5 * 16000, encoder.samples, 0.05 * 16000);
+    }
+
+    @Test
+    public void trimKeepsPausesButNotTheEdges() throws Exception {
+        CountingEncoder encoder = record(twoUtterances(), settings(SilenceGate.Mode.TRIM, false, 0), new Recorded());
+
+        // From 200 ms before the first utterance to the hangover after the last
+        assertEquals(4.5 * 16000, encoder.samples, 0.05 * 16000);
+    }
+
+    @Test
+    public void trimKeepsTrailingSilenceBeyondFiveSeconds() throws Exception {
+        // 1 s silence, 1 s speech, 8 s silence
+        short[] signal = new short[10 * 16000];
+        System.arraycopy(twoUtterances(), 16000, signal, 16000, 16000);
+        CountingEncoder encoder = record(signal, settings(SilenceGate.Mode.TRIM, false, 0), new Recorded());
+
+        // Only the last 5 s of the final pause are left out, the 2.7 s after the hangover before them stay
+        assertEquals((0.2 + 1 + 0.3 + 2.7) * 16000, encoder.samples, 0.05 * 16000);
+    }
+
+    @Test
+    public void timesOutOnceAfterLongSilence() throws Exception {
+        Recorded listener = new Recorded();
+        record(twoUtterances(), settings(SilenceGate.Mode.DETECT, false, 500), listener);
+
+        // The leading silence and the pause both run past 500 ms, only the first one counts
+        assertEquals(1, listener.timeouts);
+    }
+
+    @Test
+    public void spectralCheckRejectsBroadbandNoise() throws Exception {
+        Random random = new Random(7);
+        short[] noise = new short[3 * 16000];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) (random.nextGaussian() * 6000);
+        }
+
+        Recorded energyOnly = new Recorded();
+        record(noise, settings(SilenceGate.Mode.DETECT, false, 0), energyOnly);
+        Recorded spectral = new Recorded();
+        CountingEncoder encoder = record(noise, settings(SilenceGate.Mode.DROP_SILENCE, true, 0), spectral);
+
+        assertFalse(energyOnly.starts.isEmpty());
+        assertTrue(spectral.starts.isEmpty());
+        assertEquals(0, encoder.samples);
+
+        Recorded speech = new Recorded();
+        record(twoUtterances(), settings(SilenceGate.Mode.DETECT, true, 0), speech);
+        assertEquals(2, speech.starts.size());
+    }
+}
@@ -0,0 +1,152 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class SpectrumFrameEncoderTest {
+
+    // Same steps as SpectrumFrameDecoder in src/spectrum-frame.ts, the previous frame carries over between packets
+    private static class Decoder {
+        int[] previous;
+        final List<Float> scales = new ArrayList<>();
+        final List<Integer> types = new ArrayList<>();
+
+        List<int[]> decode(byte[] buffer, int length) {
+            ByteBuffer packet = ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(SpectrumFrameEncoder.VERSION, packet.get(0));
+            int bits = packet.get(1);
+            int bins = packet.getShort(2);
+            int frames = packet.getShort(4);
+            packet.position(SpectrumFrameEncoder.HEADER_BYTES);
+
+            List<int[]> decoded = new ArrayList<>();
+            for (int frame = 0; frame < frames; frame++) {
+                int type = packet.get();
+                types.add(type);
+                scales.add(packet.getFloat());
+
+                int[] values = new int[bins];
+                if (type == SpectrumFrameEncoder.DELTA_FRAME) {
+                    for (int i = 0; i < bins; i += 2) {
+                        int both = packet.get();
+                        values[i] = previous[i] + ((byte) (both & 0xF0) >> 4);
+                        if (i + 1 < bins) {
+                            values[i + 1] = previous[i + 1] + ((byte) (both << 4) >> 4);
+                        }
+                    }
+                } else if (bits == 8) {
+                    for (int i = 0; i < bins; i++) {
+                        values[i] = packet.get() & 0xFF;
+                    }
+                } else {
+                    for (int i = 0; i < bins; i += 2) {
+                        int both = packet.get() & 0xFF;
+                        values[i] = both >> 4;
+                        if (i + 1 < bins) {
+                            values[i + 1] = both & 0xF;
+                        }
+                    }
+                }
+                previous = values;
+                decoded.add(values);
+            }
+            assertEquals(length, packet.position());
+            return decoded;
+        }
+    }
+
+    private static int[] drift(int[] frame, Random random, int maxStep) {
+        int[] next = new int[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            next[i] = Math.max(0, Math.min(255, frame[i] + random.nextInt(2 * maxStep + 1) - maxStep));
+        }
+        return next;
+    }
+
+    @Test
+    public void deltaFramesDecodeToTheSameBins() {
+        Random random = new Random(3);
+        SpectrumFrameEncoder encoder = new SpectrumFrameEncoder(33, 4, 8, true);
+        Decoder decoder = new Decoder();
+
+        int[] frame = new int[33];
+        for (int packet = 0; packet < 20; packet++) {
+            encoder.begin(packet * 100, 25);
+            List<int[]> sent = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                // Mostly small changes, now and then a jump that needs a key frame
+                frame = drift(frame, random, i == 3 && packet % 5 == 0 ? 60 : 6);
+                sent.add(frame);
+                encoder.addFrame(frame, 2.5);
+            }
+
+            List<int[]> decoded = decoder.decode(encoder.getBuffer(), encoder.finish());
+            for (int i = 0; i < 4; i++) {
+                assertArrayEquals(sent.get(i), decoded.get(i));
+            }
+        }
+
+        assertTrue(decoder.types.contains(SpectrumFrameEncoder.DELTA_FRAME));
+        assertTrue(decoder.types.subList(1, decoder.types.size()).contains(SpectrumFrameEncoder.KEY_FRAME));
+        assertEquals(2.5f, decoder.scales.get(0), 0);
+    }
+
+    @Test
+    public void fourBitBinsKeepTheHighNibble() {
+        SpectrumFrameEncoder encoder = new SpectrumFrameEncoder(5, 1, 4, false);
+        encoder.begin(0, 0);
+        encoder.addFrame(new int[] { 255, 0, 128, 17, 240 }, 1);
+        int length = encoder.finish();
+
+        assertEquals(SpectrumFrameEncoder.HEADER_BYTES + SpectrumFrameEncoder.FRAME_HEADER_BYTES + 3, length);
+        assertArrayEquals(new int[] { 15, 0, 8, 1, 15 }, new Decoder().decode(encoder.getBuffer(), length).get(0));
+    }
+
+    @Test
+    public void headerCarriesSequenceAndTiming() {
+        SpectrumFrameEncoder encoder = new SpectrumFrameEncoder(2, 1, 8, false);
+        for (int i = 0; i < 3; i++) {
+            encoder.begin(1000 + i * 50, 50);
+            encoder.addFrame(new int[] { 1, 2 }, 1);
+            encoder.finish();
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(encoder.getBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, header.getInt(8));
+        assertEquals(1100f, header.getFloat(12), 0);
+        assertEquals(50f, header.getFloat(16), 0);
+    }
+
+    @Test
+    public void steadyToneShrinksWithDeltasAndFourBitBins() {
+        RecordingConfig config = new RecordingConfig(16000, 1, 2);
+        short[] tone = new short[16000];
+        for (int i = 0; i < tone.length; i++) {
+            tone[i] = (short) (Math.sin(2 * Math.PI * 440 * i / 16000.0) * 8000);
+        }
+
+        long[] plainBytes = { 0 };
+        new FrequencyDataThrottle(config, 20, 0, 1, 512, false, (batch, length, bins, frames) -> plainBytes[0] += length)
+                .onAudioBuffer(tone, tone.length);
+        long deltaBytes = framedBytes(config, tone, 8);
+        long fourBitBytes = framedBytes(config, tone, 4);
+
+        // Header and scale cost 25 bytes per event, 256 bins shrink to 128 bytes
+        assertTrue(plainBytes[0] + " vs " + deltaBytes, deltaBytes * 3 < plainBytes[0] * 2);
+        assertTrue(plainBytes[0] + " vs " + fourBitBytes, fourBitBytes * 3 < plainBytes[0] * 2);
+    }
+
+    private static long framedBytes(RecordingConfig config, short[] signal, int bitsPerBin) {
+        long[] bytes = { 0 };
+        FrequencyDataThrottle framed = new FrequencyDataThrottle(config, 20, 0, 1, 512, false, (batch, length, bins, frames) -> bytes[0] += length);
+        framed.useFrameFormat(bitsPerBin, true);
+        framed.onAudioBuffer(signal, signal.length);
+        return bytes[0];
+    }
+}
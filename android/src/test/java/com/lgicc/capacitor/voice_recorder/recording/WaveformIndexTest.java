@@ -0,0 +1,115 @@
+package com.lgicc.capacitor.voice_recorder.recording;
+
+import static org.junit.Assert.*;
+
+import com.lgicc.capacitor.voice_recorder.encoding.WavFileWriter;
+import java.io.File;
+import java.util.Random;
+import org.junit.Test;
+
+public class WaveformIndexTest {
+
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            // Louder towards the end, so the peaks differ per bucket
+            samples[i] = (short) (random.nextGaussian() * (100 + i / 20.0));
+        }
+        return samples;
+    }
+
+    private static WaveformIndex index(short[] samples, int channels, int readSize) {
+        WaveformIndex index = new WaveformIndex(16000, channels);
+        for (int offset = 0; offset < samples.length; offset += readSize) {
+            int length = Math.min(readSize, samples.length - offset);
+            short[] read = new short[length];
+            System.arraycopy(samples, offset, read, 0, length);
+            index.add(read, length);
+        }
+        return index;
+    }
+
+    // The exact peaks of every requested bucket may only be widened by the bucket grid of the level used
+    private static void assertCovers(short[] samples, int channels, WaveformIndex.Waveform waveform) {
+        int buckets = waveform.min().length;
+        double width = (double) (waveform.endFrame() - waveform.startFrame()) / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long from = waveform.startFrame() + (long) (bucket * width);
+            long to = Math.max(from + 1, waveform.startFrame() + (long) ((bucket + 1) * width));
+            int low = Short.MAX_VALUE;
+            int high = Short.MIN_VALUE;
+            for (long i = from * channels; i < to * channels; i++) {
+                low = Math.min(low, samples[(int) i]);
+                high = Math.max(high, samples[(int) i]);
+            }
+            assertTrue("bucket " + bucket, waveform.min()[bucket] <= low / 32768f);
+            assertTrue("bucket " + bucket, waveform.max()[bucket] >= high / 32768f);
+        }
+    }
+
+    @Test
+    public void peaksCoverEveryRangeAtEveryZoom() {
+        short[] samples = noise(2 * 300_000 + 2 * 77, 1);
+        WaveformIndex index = index(samples, 2, 1234);
+        index.finish();
+
+        assertEquals(300_077, index.getIndexedFrames());
+        assertCovers(samples, 2, index.query(0, Long.MAX_VALUE, 50));
+        assertCovers(samples, 2, index.query(0, Long.MAX_VALUE, 1000));
+        assertCovers(samples, 2, index.query(123_456, 130_000, 40));
+        assertCovers(samples, 2, index.query(299_000, Long.MAX_VALUE, 10));
+
+        // One bucket over everything is the loudest sample of the recording
+        int high = Short.MIN_VALUE;
+        for (short sample : samples) {
+            high = Math.max(high, sample);
+        }
+        assertEquals(high / 32768f, index.query(0, Long.MAX_VALUE, 1).max()[0], 0);
+    }
+
+    @Test
+    public void recordingInProgressIsQueryableUpToTheLastBucket() {
+        short[] samples = noise(100_000, 2);
+        WaveformIndex index = index(samples, 1, 4096);
+
+        // 100000 frames fill 390 buckets of 256, the rest waits for the next read or finish
+        assertEquals(390 * 256, index.getIndexedFrames());
+        WaveformIndex.Waveform waveform = index.query(0, Long.MAX_VALUE, 20);
+        assertEquals(390 * 256, waveform.endFrame());
+        assertCovers(samples, 1, waveform);
+
+        index.finish();
+        assertEquals(100_000, index.query(0, Long.MAX_VALUE, 20).endFrame());
+    }
+
+    @Test
+    public void savedPeaksAndScannedWavMatchTheLiveIndex() throws Exception {
+        short[] samples = noise(50_000, 3);
+        File recording = File.createTempFile("recording_", ".wav");
+        File peaks = WaveformIndex.fileFor(recording);
+        recording.deleteOnExit();
+        peaks.deleteOnExit();
+
+        WaveformIndex live = new WaveformIndex(16000, 1);
+        WaveformEncoder encoder = new WaveformEncoder(new WavFileWriter(recording, 16000, 1), live);
+        encoder.encode(samples, samples.length);
+        encoder.finish();
+        assertTrue(peaks.exists());
+
+        WaveformIndex saved = WaveformIndex.load(recording);
+        assertTrue(peaks.delete());
+        WaveformIndex scanned = WaveformIndex.load(recording);
+        assertTrue(peaks.exists());
+
+        for (WaveformIndex index : new WaveformIndex[] { saved, scanned }) {
+            assertEquals(50_000, index.getIndexedFrames());
+            for (int buckets : new int[] { 1, 7, 300 }) {
+                WaveformIndex.Waveform expected = live.query(0, Long.MAX_VALUE, buckets);
+                WaveformIndex.Waveform actual = index.query(0, Long.MAX_VALUE, buckets);
+                assertArrayEquals(expected.min(), actual.min(), 0);
+                assertArrayEquals(expected.max(), actual.max(), 0);
+            }
+        }
+    }
+}
@@ -2,10 +2,355 @@ import type { PluginListenerHandle } from '@capacitor/core';
 
 export type RecordStatus = 'RECORDING' | 'PAUSED' | 'NOT_RECORDING';
 export type CanRecordStatus = 'NOT_GRANTED' | 'DISABLED_BY_USER' | RecordingError.DEVICE_NOT_SUPPORTED | 'GRANTED';
+export type SampleEncoding = 'pcm16' | 'float';
+export type RecordingConfiguration = {
+  sampleRate: number;
+  channels: number;
+  encoding: SampleEncoding;
+}
+export type RecordingSessionInfo = RecordingConfiguration & {
+  /** Android: identifies the session in later calls and in its events. */
+  sessionId?: string;
+  /** Android: the rate the microphone runs at when `outputSampleRate` differs from it. */
+  captureSampleRate?: number;
+}
+export interface SessionOptions {
+  /** Android: the session to act on. Defaults to the most recently started one. */
+  sessionId?: string;
+}
+export type ResampleQuality = 'low' | 'medium' | 'high';
+export type RecordingResultType = 'file' | 'base64';
 export type RecordingData = {
-  base64: string;
+  /** Only set when `resultType: 'base64'` was requested. */
+  base64?: string;
+  /** Absolute path of the recording on the device. */
+  path?: string;
+  /** `file://` URI of the recording, can be passed to `Capacitor.convertFileSrc`. */
+  uri?: string;
+  /** URL the WebView can `fetch` the recording from directly. */
+  webPath?: string;
+  mimeType: string;
+  sampleRate?: number;
+  channels?: number;
   msDuration: number;
   size: number;
+  /** Android: capture buffers lost from the recording because storage fell behind. */
+  overruns?: number;
+  /** Android: capture buffers skipped by the frequency analysis, the recording is not affected. */
+  droppedBuffers?: number;
+  /** Android: why the analysis or stream listener stopped, the buffers after it are counted as dropped. */
+  listenerError?: string;
+  /** Android: the session the recording belongs to. */
+  sessionId?: string;
+}
+
+export type RecordingFormat = 'wav' | 'aac' | 'flac';
+
+export type FrequencyDataFormat = 'bytes' | 'frame';
+
+export interface FrequencyDataOptions {
+  /** Upper bound for `frequencyData` events per second. Buffers in between are not analysed at all. */
+  eventsPerSecond?: number;
+  /** Number of logarithmically spaced bands per frame instead of the full spectrum. */
+  bins?: number;
+  /** Number of frames packed into one event. */
+  framesPerEvent?: number;
+  /** Samples per analysis frame, rounded down to a power of two. Frames overlap when `eventsPerSecond` asks for more than fit back to back. Defaults to 4096. */
+  frameSize?: number;
+  /** `'float'` runs the FFT in single precision, `'double'` (default) in double precision. */
+  precision?: 'double' | 'float';
+  /** `'bytes'` (default) sends one byte per bin, `'frame'` sends packets for `SpectrumFrameDecoder` with a header, the scale and optional deltas. */
+  format?: FrequencyDataFormat;
+  /** Only for `format: 'frame'`, `8` (default) or `4` bits per bin. */
+  bitsPerBin?: 8 | 4;
+  /** Only for `format: 'frame'` with 8 bits per bin, sends small changes against the previous frame at half the size. */
+  delta?: boolean;
+}
+
+export type FeatureType = 'logMel' | 'mfcc';
+
+export interface FeatureDataOptions {
+  /** `'logMel'` (default) for log mel energies, `'mfcc'` for their DCT. */
+  type?: FeatureType;
+  /** Number of mel filters. Defaults to 40. */
+  melBands?: number;
+  /** Number of MFCCs per frame, only for `type: 'mfcc'`. Defaults to 13. */
+  coefficients?: number;
+  /** Length of the analysed window, zero padded to a power of two for the FFT. Defaults to 25. */
+  windowMs?: number;
+  /** Distance between frames. Defaults to 10. */
+  hopMs?: number;
+  /** Lower edge of the filterbank. Defaults to 20. */
+  minHz?: number;
+  /** Upper edge of the filterbank. Defaults to half the sample rate. */
+  maxHz?: number;
+  /** Number of frames packed into one event. Defaults to 10. */
+  framesPerEvent?: number;
+}
+
+export type FeatureData = {
+  /** `frames` frames of `valuesPerFrame` little-endian float32 values, read them with `decodeFeatureFrames`. */
+  base64: string;
+  type: FeatureType;
+  frames: number;
+  valuesPerFrame: number;
+  /** Capture position where the window of the first frame begins. */
+  startMs: number;
+  hopMs: number;
+  windowMs: number;
+  sampleRate: number;
+  sessionId?: string;
+}
+
+export interface PitchDataOptions {
+  /** Lowest fundamental to look for. Lower values need longer windows and cost more. Defaults to 60. */
+  minHz?: number;
+  /** Highest fundamental to look for. Defaults to 1000. */
+  maxHz?: number;
+  /** How aperiodic a frame may be and still count as voiced, 0 to 1. Defaults to 0.15. */
+  threshold?: number;
+  /** Distance between frames. Defaults to 10. */
+  hopMs?: number;
+  /** Number of frames packed into one event. Defaults to 5. */
+  framesPerEvent?: number;
+}
+
+export type PitchData = {
+  /** Fundamental frequency per frame in Hz, `0` for unvoiced frames. */
+  frequencies: number[];
+  /** How periodic each frame is, 0 to 1. */
+  confidences: number[];
+  frames: number;
+  /** Capture position where the window of the first frame begins. */
+  startMs: number;
+  hopMs: number;
+  sessionId?: string;
+}
+
+export interface LevelDataOptions {
+  /** Number of `levelData` events per second, each covers the audio since the previous one. Defaults to 20. */
+  eventsPerSecond?: number;
+}
+
+export type LevelData = {
+  /** Root mean square of the window, 0 to 1 relative to full scale. */
+  rms: number;
+  /** Largest absolute sample of the window, 0 to 1 relative to full scale. */
+  peak: number;
+  /** `rms` in dBFS, floored at -100. */
+  rmsDbfs: number;
+  /** `peak` in dBFS, floored at -100. */
+  peakDbfs: number;
+  /** Whether any sample of the window hit full scale. */
+  clipping: boolean;
+  /** Number of samples at full scale in the window. */
+  clippedSamples: number;
+  sessionId?: string;
+}
+
+export type AudioChunkFormat = 'pcm' | 'wav';
+
+export interface AudioChunkOptions {
+  /** Length of each chunk in milliseconds. Defaults to 1000. */
+  durationMs?: number;
+  /** `'pcm'` (default) for raw 16-bit little-endian interleaved samples, `'wav'` to give every chunk its own WAV header. */
+  format?: AudioChunkFormat;
+}
+
+export type AudioChunk = {
+  /** Starts at 0 and increases by one per chunk, a gap means a chunk was lost. */
+  sequence: number;
+  base64: string;
+  format: AudioChunkFormat;
+  sampleRate: number;
+  channels: number;
+  /** Position of the first sample of the chunk in the recording. */
+  startMs: number;
+  durationMs: number;
+  /** `true` for the final, possibly shorter, chunk sent when the recording stops. */
+  last: boolean;
+  sessionId?: string;
+}
+
+export interface JournalOptions {
+  /** How often the audio written so far is made durable. Defaults to 2000. */
+  checkpointIntervalMs?: number;
+}
+
+export type VadMode = 'detect' | 'dropSilence' | 'trim';
+
+export interface VadOptions {
+  /** `'detect'` (default) only emits events, `'dropSilence'` leaves pauses out of the recording, `'trim'` leaves out silence before the first and after the last speech, trailing silence only up to its last 5 s. */
+  mode?: VadMode;
+  /** Level a frame has to exceed to count as speech. Defaults to -45. */
+  thresholdDbfs?: number;
+  /** How long speech is assumed to continue after the last voiced frame. Defaults to 300. */
+  hangoverMs?: number;
+  /** Also require most of the energy to be in the speech band, which rejects loud broadband noise. Defaults to `false`. */
+  spectral?: boolean;
+  /** Stops the recording after this much silence and emits `recordingAutoStopped`. Off by default. */
+  autoStopSilenceMs?: number;
+}
+
+export type SpeechEvent = {
+  /** Position in the captured audio, silence left out of the recording still counts. */
+  timeMs: number;
+  sessionId?: string;
+}
+
+export type RecordingAutoStopped = RecordingData & {
+  /** `'microphoneLost'` when Android took the microphone away, e.g. for a call, the audio up to then is kept. */
+  reason: 'silence' | 'microphoneLost';
+}
+
+export interface MetricsOptions {
+  /** Time between two `recorderMetrics` events. Defaults to 1000. */
+  intervalMs?: number;
+}
+
+export type LatencyStats = {
+  count: number;
+  meanUs: number;
+  maxUs: number;
+  /** Quantiles are the upper bound of their power of two bucket. */
+  p50Us: number;
+  p90Us: number;
+  p99Us: number;
+  /** `buckets[i]` counts durations below 2^i microseconds, the last bucket also everything longer. */
+  buckets: number[];
+}
+
+export type RecorderMetrics = {
+  /** Session the pipeline counters belong to, the capture counters are shared by all sessions. */
+  sessionId?: string;
+  reads: number;
+  samplesRead: number;
+  minReadSize: number;
+  maxReadSize: number;
+  meanReadSize: number;
+  /** Negative results of `AudioRecord.read`, `lastReadError` holds the latest code. */
+  readErrors: number;
+  lastReadError: number;
+  /** Time from `startRecording` to the first captured samples, `-1` until they arrive. */
+  startToFirstSampleMs: number;
+  overruns: number;
+  droppedBuffers: number;
+  droppedChunkBuffers: number;
+  listenerError?: string;
+  /** Audio waiting in the pipeline for storage, analysis or streaming. */
+  bufferedBytes: number;
+  /** Heap the pipeline buffers of the recording hold. */
+  pipelineHeapBytes: number;
+  /** Heap the `startListening` history holds, `0` when not listening. */
+  prerollHeapBytes: number;
+  encodedBytes: number;
+  /** Java heap in use by the whole app. */
+  heapUsedBytes: number;
+  latencies: {
+    /** Blocking time of each capture read. */
+    read: LatencyStats;
+    /** Time the capture thread takes to hand a read to the pipeline. */
+    handoff: LatencyStats;
+    storage: LatencyStats;
+    analysis: LatencyStats;
+    stream: LatencyStats;
+    fft: LatencyStats;
+    /** Time spent sending the capture events to JS. */
+    notify: LatencyStats;
+  };
+}
+
+export type FrequencyData = {
+  /** `frames` consecutive frames of `bins` values between 0 and 255, or a packet for `SpectrumFrameDecoder` for `format: 'frame'`. */
+  base64: string;
+  format?: FrequencyDataFormat;
+  bins?: number;
+  frames?: number;
+  sessionId?: string;
+}
+
+export interface StartRecordingOptions {
+  /** Container/codec of the recording, encoded while recording. Defaults to `'wav'`. */
+  format?: RecordingFormat;
+  /** Capture rate in Hz. Defaults to `44100`. */
+  sampleRate?: number;
+  /** `1` (default) or `2`. */
+  channels?: number;
+  /** Sample format of the capture. `'float'` is only stored as is in `wav` recordings. Defaults to `'pcm16'`. */
+  encoding?: SampleEncoding;
+  /** Rate and shape of the `frequencyData` events (Android only). `false` turns the spectrum analysis off entirely. */
+  frequencyData?: FrequencyDataOptions | false;
+  /** `true` or options to emit `levelData` events, a cheap level meter that does not need an FFT. Off by default. */
+  levelData?: LevelDataOptions | boolean;
+  /** `true` or options to emit log-mel or MFCC `featureData` events for on-device models (Android only). Off by default. */
+  featureData?: FeatureDataOptions | boolean;
+  /** `true` or options to emit `pitchData` events with the fundamental frequency per frame (Android only). Off by default. */
+  pitchData?: PitchDataOptions | boolean;
+  /** `true` or options to stream the capture as `audioChunk` events while recording (Android only). Off by default. */
+  audioChunk?: AudioChunkOptions | boolean;
+  /** `true` or options to journal the recording, so `recoverRecordings` can restore it after the app was killed (Android only). */
+  journal?: JournalOptions | boolean;
+  /** `true` or options to detect speech, emit `speechStart`/`speechEnd` and optionally keep silence out of the recording (Android only). */
+  vad?: VadOptions | boolean;
+  /** `true` or options to emit `recorderMetrics` events while recording (Android only). */
+  metrics?: MetricsOptions | boolean;
+  /** Audio from before the call to put at the start of the recording, taken from the `startListening` history (Android only). */
+  prerollMs?: number;
+  /** Rate of the file and of all events, converted from the capture rate on the fly, 8000 to 192000 (Android only). Rates without a small ratio to the capture rate, e.g. 44101, are rejected. */
+  outputSampleRate?: number;
+  /** Filter length of the `outputSampleRate` conversion. Defaults to `'medium'` (Android only). */
+  resampleQuality?: ResampleQuality;
+}
+
+export interface GetWaveformOptions {
+  /** A finished recording as returned by `stopRecording`. Without it, the session recording right now. */
+  path?: string;
+  /** The session to read while recording. Defaults to the most recently started one. */
+  sessionId?: string;
+  /** Defaults to the start of the recording. */
+  startMs?: number;
+  /** Defaults to the end of the recording, or to what has been recorded so far. */
+  endMs?: number;
+  /** Number of min/max pairs to return. Defaults to 512. */
+  buckets?: number;
+}
+
+export type Waveform = {
+  /** Lowest sample per bucket, -1 to 1 relative to full scale. */
+  min: number[];
+  /** Highest sample per bucket, -1 to 1 relative to full scale. */
+  max: number[];
+  /** The range actually covered, clamped to the recording. */
+  startMs: number;
+  endMs: number;
+}
+
+export interface StartListeningOptions {
+  sampleRate?: number;
+  channels?: number;
+  encoding?: SampleEncoding;
+  /** How much of the latest audio to keep for `prerollMs`. Defaults to 5000, at most 30000. */
+  historyMs?: number;
+}
+
+export interface RequestPermissionOptions {
+  /** Shows an alert linking to the app settings when the permission was denied for good. Defaults to `true`. */
+  showQuickLink?: boolean;
+}
+
+export interface PrepareRecorderOptions {
+  /** Also creates the encoder of the next take. Without it only the microphone is prepared. */
+  format?: RecordingFormat;
+  sampleRate?: number;
+  channels?: number;
+  encoding?: SampleEncoding;
+  /** Releases the prepared microphone after this long without a recording, `0` keeps it until the app is paused. Defaults to 30000. */
+  idleTimeoutMs?: number;
+}
+
+export interface StopRecordingOptions extends SessionOptions {
+  /** `'file'` (default) leaves the recording on disk and returns its location, `'base64'` inlines the whole file. */
+  resultType?: RecordingResultType;
 }
 
 export enum RecordingError {
@@ -13,22 +358,65 @@ export enum RecordingError {
   DEVICE_NOT_SUPPORTED = 'DEVICE_NOT_SUPPORTED',
   MISSING_MICROPHONE_PERMISSION = 'MISSING_MICROPHONE_PERMISSION',
   MICROPHONE_IN_USE = 'MICROPHONE_IN_USE',
+  INVALID_ARGUMENT = 'INVALID_ARGUMENT',
+  RECORDING_NOT_FOUND = 'RECORDING_NOT_FOUND',
   UNKNOWN_ERROR = 'UNKNOWN_ERROR',
 }
 
 
 
 export interface CapacitorVoiceRecorderPlugin {
-  canRecord(): Promise<{ status: CanRecordStatus }>;
-  requestPermission(): Promise<{ isGranted: true }>;
-  startRecording(): Promise<void>;
-  stopRecording(): Promise<RecordingData>;
-  pauseRecording(): Promise<void>;
-  resumeRecording(): Promise<void>;
-  getCurrentStatus(): Promise<{
+  canRecord(): Promise<{
+    status: CanRecordStatus;
+    /** Capture configurations the device accepts, ordered from the least to the most data per second. */
+    supportedConfigs?: RecordingConfiguration[];
+  }>;
+  /** Rejects with `MISSING_MICROPHONE_PERMISSION` when the user denies it. */
+  requestPermission(options?: RequestPermissionOptions): Promise<{ isGranted: true }>;
+  /**
+   * Resolves with the configuration actually used, which falls back to a supported one if the requested one is not.
+   * On Android a call while another session records starts a concurrent session in the running configuration.
+   */
+  startRecording(options?: StartRecordingOptions): Promise<RecordingSessionInfo>;
+  /** Sets up the microphone, and optionally the encoder, ahead of `startRecording` and keeps them ready between takes (Android only). */
+  prepareRecorder(options?: PrepareRecorderOptions): Promise<RecordingConfiguration>;
+  /** Keeps the microphone running without recording, so `startRecording` can include audio from before it was called (Android only). */
+  startListening(options?: StartListeningOptions): Promise<RecordingConfiguration>;
+  stopListening(): Promise<void>;
+  stopRecording(options?: StopRecordingOptions): Promise<RecordingData>;
+  deleteRecording(options: { path: string }): Promise<void>;
+  /** Peaks of a recording for drawing its waveform, without decoding the audio (Android only). */
+  getWaveform(options?: GetWaveformOptions): Promise<Waveform>;
+  /** Finalises journaled recordings of a previous app run that never got stopped. They are always returned as WAV files. */
+  recoverRecordings(): Promise<{ recordings: RecordingData[] }>;
+  pauseRecording(options?: SessionOptions): Promise<void>;
+  resumeRecording(options?: SessionOptions): Promise<void>;
+  /** Counters of the current recording, or of the last one once it stopped (Android only). */
+  getRecorderMetrics(options?: SessionOptions): Promise<RecorderMetrics>;
+  /** Without a `sessionId` the status covers all sessions, `RECORDING` while any of them records. */
+  getCurrentStatus(options?: SessionOptions): Promise<{
     status: RecordStatus;
+    /** Android: ids of the sessions still open. */
+    sessionIds?: string[];
+    /** Android: whether `startListening` keeps a history. */
+    listening?: boolean;
+    /** Android: capture buffers lost from the recording because storage fell behind. */
+    overruns?: number;
+    /** Android: capture buffers skipped by the frequency analysis, the recording is not affected. */
+    droppedBuffers?: number;
+    /** Android: capture buffers missing from the `audioChunk` stream. */
+    droppedChunkBuffers?: number;
+    /** Android: why the analysis or stream listener stopped, the buffers after it are counted as dropped. */
+    listenerError?: string;
   }>;
 
-  addListener(eventName: 'frequencyData', listenerFunc: (data: {base64: string}) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'frequencyData', listenerFunc: (data: FrequencyData) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'featureData', listenerFunc: (data: FeatureData) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'pitchData', listenerFunc: (data: PitchData) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'levelData', listenerFunc: (data: LevelData) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'audioChunk', listenerFunc: (chunk: AudioChunk) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'speechStart' | 'speechEnd', listenerFunc: (event: SpeechEvent) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'recorderMetrics', listenerFunc: (metrics: RecorderMetrics) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'recordingAutoStopped', listenerFunc: (recording: RecordingAutoStopped) => void): Promise<PluginListenerHandle>;
   removeAllListeners(): Promise<void>;
 }
@@ -0,0 +1,23 @@
+import type { FeatureData } from './definitions';
+
+/**
+ * Splits a `featureData` event into one `Float32Array` per frame, oldest first. Frame `i` starts at
+ * `startMs + i * hopMs` of the capture.
+ */
+export function decodeFeatureFrames(event: FeatureData): Float32Array[] {
+  const binary = atob(event.base64);
+  const view = new DataView(new ArrayBuffer(binary.length));
+  for (let i = 0; i < binary.length; i++) {
+    view.setUint8(i, binary.charCodeAt(i));
+  }
+
+  const frames: Float32Array[] = [];
+  for (let frame = 0; frame < event.frames; frame++) {
+    const values = new Float32Array(event.valuesPerFrame);
+    for (let i = 0; i < values.length; i++) {
+      values[i] = view.getFloat32((frame * event.valuesPerFrame + i) * 4, true);
+    }
+    frames.push(values);
+  }
+  return frames;
+}
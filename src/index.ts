@@ -7,4 +7,6 @@ const CapacitorVoiceRecorder = registerPlugin<CapacitorVoiceRecorderPlugin>('Cap
 });
 
 export * from './definitions';
+export * from './feature-frame';
+export * from './spectrum-frame';
 export { CapacitorVoiceRecorder };
@@ -0,0 +1,109 @@
+import type { FrequencyData } from './definitions';
+
+export const SPECTRUM_FRAME_VERSION = 1;
+
+const HEADER_BYTES = 20;
+const DELTA_FRAME = 1;
+
+export type SpectrumFrame = {
+  /** Capture position of the end of the analysed window. */
+  timeMs: number;
+  /** Bins between 0 and 255, 4-bit packets are scaled up to the same range. */
+  values: Uint8Array;
+  /** The log10 magnitude a 255 stands for, every frame is normalized on its own. */
+  scale: number;
+};
+
+export type SpectrumPacket = {
+  sequence: number;
+  bins: number;
+  frames: SpectrumFrame[];
+};
+
+/**
+ * Reads the `frequencyData` events sent with `format: 'frame'`. Keep one decoder per recording and feed it every
+ * event in order, delta frames build on the frame before. Frames that can't be decoded yet, because the listener
+ * joined between key frames or missed an event, are left out until the next key frame.
+ */
+export class SpectrumFrameDecoder {
+  private _previous?: Uint8Array;
+  private _sequence?: number;
+
+  public decode(event: FrequencyData | string): SpectrumPacket {
+    const bytes = SpectrumFrameDecoder._fromBase64(typeof event === 'string' ? event : event.base64);
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+
+    const version = view.getUint8(0);
+    if (version !== SPECTRUM_FRAME_VERSION) {
+      throw new Error(`Unsupported spectrum frame version ${version}`);
+    }
+
+    const bitsPerBin = view.getUint8(1);
+    const bins = view.getUint16(2, true);
+    const frameCount = view.getUint16(4, true);
+    const sequence = view.getUint32(8, true);
+    const timeMs = view.getFloat32(12, true);
+    const frameIntervalMs = view.getFloat32(16, true);
+
+    // A gap in the sequence means the deltas of this packet may refer to a frame that never arrived
+    if (this._sequence != null && sequence !== this._sequence + 1) {
+      this._previous = undefined;
+    }
+    this._sequence = sequence;
+
+    const frames: SpectrumFrame[] = [];
+    let offset = HEADER_BYTES;
+    for (let frame = 0; frame < frameCount; frame++) {
+      const type = view.getUint8(offset);
+      const scale = view.getFloat32(offset + 1, true);
+      offset += 5;
+
+      let quantised: Uint8Array | undefined;
+      if (type === DELTA_FRAME) {
+        const previous = this._previous;
+        if (previous) {
+          quantised = new Uint8Array(bins);
+          for (let i = 0; i < bins; i++) {
+            const nibble = i % 2 === 0 ? bytes[offset + i / 2] >> 4 : bytes[offset + (i - 1) / 2] & 0xf;
+            quantised[i] = previous[i] + (nibble >= 8 ? nibble - 16 : nibble);
+          }
+        }
+        offset += Math.ceil(bins / 2);
+      } else if (bitsPerBin === 8) {
+        quantised = bytes.slice(offset, offset + bins);
+        offset += bins;
+      } else {
+        quantised = new Uint8Array(bins);
+        for (let i = 0; i < bins; i++) {
+          quantised[i] = i % 2 === 0 ? bytes[offset + i / 2] >> 4 : bytes[offset + (i - 1) / 2] & 0xf;
+        }
+        offset += Math.ceil(bins / 2);
+      }
+
+      this._previous = quantised;
+      if (quantised) {
+        frames.push({
+          timeMs: timeMs + frame * frameIntervalMs,
+          values: bitsPerBin === 8 ? quantised : quantised.map((value) => value * 17),
+          scale,
+        });
+      }
+    }
+
+    return { sequence, bins, frames };
+  }
+
+  public reset(): void {
+    this._previous = undefined;
+    this._sequence = undefined;
+  }
+
+  private static _fromBase64(base64: string): Uint8Array {
+    const binary = atob(base64);
+    const bytes = new Uint8Array(binary.length);
+    for (let i = 0; i < binary.length; i++) {
+      bytes[i] = binary.charCodeAt(i);
+    }
+    return bytes;
+  }
+}
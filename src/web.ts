@@ -3,7 +3,19 @@ import type { IMediaRecorder} from 'extendable-media-recorder';
 import {deregister, MediaRecorder, register} from 'extendable-media-recorder';
 import {connect, disconnect} from 'extendable-media-recorder-wav-encoder';
 
-import type { CanRecordStatus, CapacitorVoiceRecorderPlugin, RecordingData, RecordStatus } from './definitions';
+import type {
+  CanRecordStatus,
+  CapacitorVoiceRecorderPlugin,
+  LevelData,
+  RecorderMetrics,
+  RecordingConfiguration,
+  RecordingData,
+  RecordingSessionInfo,
+  RecordStatus,
+  StartRecordingOptions,
+  StopRecordingOptions,
+  Waveform,
+} from './definitions';
 import { RecordingError } from './definitions';
 
 export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoiceRecorderPlugin {
@@ -53,11 +65,15 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     }
   }
 
-  public async startRecording(): Promise<void> {
+  public async startRecording(options?: StartRecordingOptions): Promise<RecordingSessionInfo> {
     if (this._mediaRecorder != null) {
       return Promise.reject(RecordingError.MICROPHONE_IN_USE);
     }
 
+    if (options?.format != null && options.format !== 'wav') {
+      return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
+    }
+
     const hasPermission = await this.canRecord();
 
     if (hasPermission.status !== 'GRANTED') {
@@ -67,7 +83,12 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     this._encoder = await connect();
     await register(this._encoder);
 
-    this._mediaStream = await navigator.mediaDevices.getUserMedia({ audio: true });
+    this._mediaStream = await navigator.mediaDevices.getUserMedia({
+      audio: {
+        sampleRate: options?.sampleRate,
+        channelCount: options?.channels,
+      },
+    });
     this._mediaRecorder = new MediaRecorder(this._mediaStream, { mimeType: 'audio/wav' });
 
     this._mediaRecorder.onstart = () => {
@@ -81,15 +102,26 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     analyser.smoothingTimeConstant = 0;
 
     const dataArray = new Uint8Array(analyser.fftSize);
+    const timeDomain = new Float32Array(analyser.fftSize);
     const source = audioContext.createMediaStreamSource(this._mediaStream);
     source.connect(analyser);
 
+    const emitFrequencyData = options?.frequencyData !== false;
+    const emitLevelData = options?.levelData != null && options.levelData !== false;
+
     this._mediaRecorder.ondataavailable = async (event: any) => {
       this._chunks.push(event.data);
 
-      analyser.getByteFrequencyData(dataArray);
-      const frequencies = btoa(String.fromCharCode.apply(null, Array.from(dataArray).splice(0, analyser.fftSize)));
-      this.notifyListeners('frequencyData', { base64: frequencies });
+      if (emitFrequencyData) {
+        analyser.getByteFrequencyData(dataArray);
+        const frequencies = btoa(String.fromCharCode.apply(null, Array.from(dataArray).splice(0, analyser.fftSize)));
+        this.notifyListeners('frequencyData', { base64: frequencies, format: 'bytes' });
+      }
+
+      if (emitLevelData) {
+        analyser.getFloatTimeDomainData(timeDomain);
+        this.notifyListeners('levelData', CapacitorVoiceRecorderWeb._measureLevel(timeDomain));
+      }
     };
 
     this._mediaRecorder.onerror = () => {
@@ -108,9 +140,56 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     };
 
     this._mediaRecorder.start(100);
+
+    const settings = this._mediaStream.getAudioTracks()[0]?.getSettings();
+    return {
+      sampleRate: settings?.sampleRate ?? audioContext.sampleRate,
+      channels: settings?.channelCount ?? 1,
+      encoding: 'pcm16',
+    };
+  }
+
+  // getUserMedia has to run inside startRecording anyway, there is nothing to set up ahead of it
+  public async prepareRecorder(): Promise<RecordingConfiguration> {
+    return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
+  }
+
+  // A MediaRecorder only delivers audio from its start, keeping a history would mean recording all the time
+  public async startListening(): Promise<RecordingConfiguration> {
+    return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
   }
 
-  public async stopRecording(): Promise<RecordingData> {
+  public async stopListening(): Promise<void> {
+    return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
+  }
+
+  // The web recorder emits one level per 100 ms data chunk, measured over the analyser's latest window
+  private static _measureLevel(samples: Float32Array): LevelData {
+    let sumOfSquares = 0;
+    let peak = 0;
+    let clippedSamples = 0;
+    for (const sample of samples) {
+      const magnitude = Math.abs(sample);
+      sumOfSquares += sample * sample;
+      peak = Math.max(peak, magnitude);
+      if (magnitude >= 1) {
+        clippedSamples++;
+      }
+    }
+
+    const rms = Math.sqrt(sumOfSquares / samples.length);
+    const toDbfs = (level: number) => (level > 0 ? Math.max(-100, 20 * Math.log10(level)) : -100);
+    return {
+      rms,
+      peak: Math.min(1, peak),
+      rmsDbfs: toDbfs(rms),
+      peakDbfs: toDbfs(peak),
+      clipping: clippedSamples > 0,
+      clippedSamples,
+    };
+  }
+
+  public async stopRecording(options?: StopRecordingOptions): Promise<RecordingData> {
     if (!this._mediaRecorder) {
       return Promise.reject(RecordingError.NOT_RECORDING);
     }
@@ -135,13 +214,40 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     await disconnect(this._encoder);
     this._encoder = undefined;
 
+    if (options?.resultType === 'base64') {
+      return {
+        base64: await this._blobToBase64(blobVoiceRecording),
+        mimeType,
+        msDuration: recordingDuration,
+        size: blobVoiceRecording.size,
+      };
+    }
+
     return {
-      base64: await this._blobToBase64(blobVoiceRecording),
+      webPath: URL.createObjectURL(blobVoiceRecording),
+      mimeType,
       msDuration: recordingDuration,
       size: blobVoiceRecording.size,
     };
   }
 
+  public async getWaveform(): Promise<Waveform> {
+    return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
+  }
+
+  public async deleteRecording(options: { path: string }): Promise<void> {
+    if (!options?.path?.startsWith('blob:')) {
+      return Promise.reject(RecordingError.RECORDING_NOT_FOUND);
+    }
+
+    URL.revokeObjectURL(options.path);
+  }
+
+  // Browser recordings only live in memory, there is never anything left over from a previous page load
+  public async recoverRecordings(): Promise<{ recordings: RecordingData[] }> {
+    return { recordings: [] };
+  }
+
   public async pauseRecording(): Promise<void> {
     if (!this._mediaRecorder) {
       return Promise.reject(RecordingError.NOT_RECORDING);
@@ -168,6 +274,11 @@ export class CapacitorVoiceRecorderWeb extends WebPlugin implements CapacitorVoi
     return Promise.reject(RecordingError.NOT_RECORDING);
   }
 
+  // MediaRecorder exposes none of the capture internals these counters describe
+  public async getRecorderMetrics(): Promise<RecorderMetrics> {
+    return Promise.reject(RecordingError.DEVICE_NOT_SUPPORTED);
+  }
+
   public async getCurrentStatus(): Promise<{ status: RecordStatus }> {
     if (!this._mediaRecorder) {
       return Promise.resolve({ status: 'NOT_RECORDING' });